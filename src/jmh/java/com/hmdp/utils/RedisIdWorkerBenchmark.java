@@ -0,0 +1,57 @@
+package com.hmdp.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RedisIdWorker生成时间戳和key的开销对比(不含Redis自增)
+ * legacy为改造前每次调用都创建LocalDateTime、格式化日期、拼接key的写法
+ * 运行: mvn -P benchmark verify -Djmh.args="RedisIdWorkerBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisIdWorkerBenchmark {
+
+    private static final long BEGIN_TIMESTAMP = 1640995200L;
+
+    private RedisIdWorker redisIdWorker;
+
+    @Setup
+    public void setup() {
+        redisIdWorker = new RedisIdWorker(null, null);
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) {
+        LocalDateTime now = LocalDateTime.now();
+        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
+        bh.consume(nowSecond - BEGIN_TIMESTAMP);
+        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
+        bh.consume("icr:" + "order" + ":" + date);
+    }
+
+    @Benchmark
+    public void cached(Blackhole bh) {
+        long nowMillis = System.currentTimeMillis();
+        bh.consume(redisIdWorker.timestamp(nowMillis));
+        bh.consume(redisIdWorker.sequenceKey("order", nowMillis));
+    }
+}
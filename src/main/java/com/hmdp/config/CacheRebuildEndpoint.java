@@ -0,0 +1,25 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheRebuildExecutor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+/**
+ * 缓存重建线程池的队列深度、耗时和失败统计，GET /actuator/cacherebuild
+ */
+@Component
+@Endpoint(id = "cacherebuild")
+public class CacheRebuildEndpoint {
+
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        return cacheRebuildExecutor.stats();
+    }
+}
@@ -0,0 +1,25 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.RateLimiter;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+/**
+ * 各接口限流的通过和拒绝次数，GET /actuator/ratelimit
+ */
+@Component
+@Endpoint(id = "ratelimit")
+public class RateLimitEndpoint {
+
+    @Resource
+    private RateLimiter rateLimiter;
+
+    @ReadOperation
+    public Map<String, Map<String, Long>> stats() {
+        return rateLimiter.stats();
+    }
+}
@@ -0,0 +1,25 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.RedisScriptRegistry;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+/**
+ * lua脚本调用统计，GET /actuator/redisscripts
+ */
+@Component
+@Endpoint(id = "redisscripts")
+public class RedisScriptEndpoint {
+
+    @Resource
+    private RedisScriptRegistry redisScriptRegistry;
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> stats() {
+        return redisScriptRegistry.stats();
+    }
+}
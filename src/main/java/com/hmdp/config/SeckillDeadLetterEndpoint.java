@@ -0,0 +1,38 @@
+package com.hmdp.config;
+
+import com.hmdp.service.IVoucherOrderService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 秒杀订单死信队列，GET /actuator/seckilldlq 查询消息数量，POST /actuator/seckilldlq 重新投递
+ * 运维操作只通过actuator暴露，不对登录用户开放
+ */
+@Component
+@Endpoint(id = "seckilldlq")
+public class SeckillDeadLetterEndpoint {
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @ReadOperation
+    public Map<String, Long> size() {
+        return Collections.singletonMap("size", voucherOrderService.countDeadLetterOrders());
+    }
+
+    /**
+     * @param count 本次重新投递的最大消息数，默认100
+     */
+    @WriteOperation
+    public Map<String, Integer> replay(@Nullable Integer count) {
+        int replayed = voucherOrderService.replayDeadLetterOrders(count == null ? 100 : count);
+        return Collections.singletonMap("replayed", replayed);
+    }
+}
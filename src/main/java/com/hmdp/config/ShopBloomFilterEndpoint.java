@@ -0,0 +1,32 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.ShopBloomFilter;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+/**
+ * 商铺布隆过滤器的误判率统计 GET /actuator/shopbloom，在线重建 POST /actuator/shopbloom
+ */
+@Component
+@Endpoint(id = "shopbloom")
+public class ShopBloomFilterEndpoint {
+
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
+
+    @ReadOperation
+    public Map<String, Object> stats() {
+        return shopBloomFilter.stats();
+    }
+
+    @WriteOperation
+    public Map<String, Object> rebuild() {
+        shopBloomFilter.rebuild();
+        return shopBloomFilter.stats();
+    }
+}
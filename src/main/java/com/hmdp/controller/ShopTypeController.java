@@ -9,7 +9,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collections;
 
 /**
  * <p>
@@ -26,8 +27,7 @@ public class ShopTypeController {
 
     @GetMapping("list")
     public Result queryTypeList() {
-        List<ShopType> typeList = typeService
-                .query().orderByAsc("sort").list();
-        return Result.ok(typeList);
+        ShopType[] types = typeService.queryTypeList();
+        return Result.ok(types == null ? Collections.emptyList() : Arrays.asList(types));
     }
 }
@@ -33,6 +33,16 @@ public class VoucherController {
         return Result.ok(voucher.getId()); // 返回添加成功的优惠券id
     }
 
+    /**
+     * 查询秒杀时间，用于前端倒计时
+     * @param voucherId 优惠券id
+     * @return 开始时间、结束时间和服务器当前时间(毫秒)
+     */
+    @GetMapping("seckill/window/{id}")
+    public Result querySeckillWindow(@PathVariable("id") Long voucherId) {
+        return voucherService.querySeckillWindow(voucherId);
+    }
+
     /**
      * 新增普通券
      * @param voucher 优惠券信息
@@ -40,7 +50,7 @@ public class VoucherController {
      */
     @PostMapping
     public Result addVoucher(@RequestBody Voucher voucher) {
-        voucherService.save(voucher);
+        voucherService.addVoucher(voucher);
         return Result.ok(voucher.getId());
     }
 
@@ -52,6 +62,8 @@ public class VoucherController {
      */
     @GetMapping("/list/{shopId}")
     public Result queryVoucherOfShop(@PathVariable("shopId") Long shopId) {
-       return voucherService.queryVoucherOfShop(shopId);
+        // 优惠券列表读取缓存，秒杀库存实时读取
+        Voucher[] vouchers = voucherService.queryVoucherOfShop(shopId);
+        return Result.ok(voucherService.fillRemainingStock(vouchers));
     }
 }
@@ -3,11 +3,13 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.RateLimit;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
 
 import javax.annotation.Resource;
 
@@ -31,7 +33,22 @@ public class VoucherOrderController {
      * @return 订单创建结果
      */
     @PostMapping("seckill/{id}") // 处理秒杀下单请求,路径为/voucher-order/seckill/{id}
+    @RateLimit(name = "seckill", type = RateLimit.Type.USER, capacity = 5)
+    @RateLimit(name = "seckill", type = RateLimit.Type.IP, capacity = 50)
     public Result seckillVoucher(@PathVariable("id") Long voucherId) { // @PathVariable注解用于获取URL中的id参数
         return voucherOrderService.seckillVoucher(voucherId); // 调用服务层处理秒杀下单逻辑
     }
+
+    /**
+     * 秒杀优惠券下单，非阻塞版本
+     * 返回Mono，Spring MVC以异步请求处理，等待Redis响应期间不占用Tomcat工作线程，返回结果与同步版本一致
+     * @param voucherId 优惠券id
+     * @return 订单创建结果
+     */
+    @PostMapping("seckill/{id}/async")
+    @RateLimit(name = "seckill", type = RateLimit.Type.USER, capacity = 5)
+    @RateLimit(name = "seckill", type = RateLimit.Type.IP, capacity = 50)
+    public Mono<Result> seckillVoucherAsync(@PathVariable("id") Long voucherId) {
+        return voucherOrderService.seckillVoucherReactive(voucherId);
+    }
 }
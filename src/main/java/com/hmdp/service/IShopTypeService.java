@@ -13,4 +13,10 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IShopTypeService extends IService<ShopType> {
 
+    /**
+     * 查询店铺类型，结果使用逻辑过期缓存在Redis中
+     * @return 按sort排序的店铺类型
+     */
+    ShopType[] queryTypeList();
+
 }
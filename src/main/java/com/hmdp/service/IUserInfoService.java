@@ -13,4 +13,11 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IUserInfoService extends IService<UserInfo> {
 
+    /**
+     * 查询用户详情，结果缓存在Redis中，不包含创建和更新时间
+     * @param userId 用户id
+     * @return 用户详情，不存在返回null
+     */
+    UserInfo queryUserInfo(Long userId);
+
 }
@@ -3,9 +3,12 @@ package com.hmdp.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 
 import javax.servlet.http.HttpSession;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * <p>
@@ -21,8 +24,28 @@ public interface IUserService extends IService<User> {
 
     Result login(LoginFormDTO loginForm, HttpSession session);
 
+    /**
+     * 退出登录，Redis会话直接删除，签名令牌加入吊销列表
+     * @param token 登录令牌
+     */
+    Result logout(String token);
+
     Result sign();
 
     Result signCount();
 
+    /**
+     * 查询用户的公开信息，结果缓存在Redis中，与批量查询共用缓存
+     * @param id 用户id
+     * @return 用户信息，不存在返回null
+     */
+    UserDTO queryUserDTO(Long id);
+
+    /**
+     * 批量查询用户的公开信息，先查缓存，未命中的一次性查询数据库
+     * @param ids 用户id
+     * @return 用户id -> 用户信息，按ids的顺序排列
+     */
+    Map<Long, UserDTO> queryUserDTOs(Collection<Long> ids);
+
 }
@@ -3,6 +3,7 @@ package com.hmdp.service;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
+import reactor.core.publisher.Mono;
 
 /**
  * <p>
@@ -15,4 +16,18 @@ import com.baomidou.mybatisplus.extension.service.IService;
 public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
+
+    Mono<Result> seckillVoucherReactive(Long voucherId);
+
+    /**
+     * 将死信队列中的订单消息重新投递到订单队列
+     * @param count 本次重新投递的最大消息数
+     * @return 重新投递的消息数
+     */
+    int replayDeadLetterOrders(int count);
+
+    /**
+     * 死信队列中的消息数量
+     */
+    long countDeadLetterOrders();
 }
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -14,7 +16,23 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IVoucherService extends IService<Voucher> {
 
-    Result queryVoucherOfShop(Long shopId);
+    /**
+     * 查询店铺的优惠券列表，结果缓存在Redis中，不包含秒杀库存
+     * @param shopId 店铺id
+     * @return 优惠券，返回的对象可能被缓存共享，不能修改
+     */
+    Voucher[] queryVoucherOfShop(Long shopId);
+
+    /**
+     * 为秒杀券设置Redis中的实时库存
+     * @param vouchers 缓存中的优惠券
+     * @return 设置了库存的副本
+     */
+    List<Voucher> fillRemainingStock(Voucher[] vouchers);
+
+    void addVoucher(Voucher voucher);
 
     void addSeckillVoucher(Voucher voucher);
+
+    Result querySeckillWindow(Long voucherId);
 }
@@ -1,6 +1,5 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -9,13 +8,14 @@ import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.entity.Follow;
-import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
@@ -24,6 +24,7 @@ import javax.annotation.Resource;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -50,6 +51,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
     @Resource
     private IFollowService followService;
 
+
     @Override
     public Result queryHotBlog(Integer current) {
         // 根据用户查询
@@ -58,11 +60,9 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            this.queryBlogUser(blog);
-            this.isBlogLiked(blog);
-        });
+        // 批量查询用户和点赞状态
+        queryBlogUsers(records);
+        isBlogsLiked(records);
         return Result.ok(records);
     }
 
@@ -148,17 +148,8 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         // 2.解析出其中的用户id
         // 将字符串类型的用户ID转换为Long类型
         List<Long> ids = top5.stream().map(Long::valueOf).collect(Collectors.toList());
-        // 将用户ID列表转换为逗号分隔的字符串，用于SQL查询
-        String idStr = StrUtil.join(",", ids);
-        // 3.根据用户id查询用户 WHERE id IN ( 5 , 1 ) ORDER BY FIELD(id, 5, 1)
-        // 查询数据库获取用户信息，并保持与Redis中相同的顺序
-        // ORDER BY FIELD确保返回的用户顺序与传入的id顺序一致
-        List<UserDTO> userDTOS = userService.query()
-                .in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list()
-                .stream()
-                // 将User对象转换为UserDTO对象，减少数据传输量
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
-                .collect(Collectors.toList());
+        // 3.批量查询用户，先查缓存，未命中的一次 IN 查询，结果保持与Redis中相同的顺序
+        List<UserDTO> userDTOS = new ArrayList<>(userService.queryUserDTOs(ids).values());
         // 4.返回点赞用户列表
         return Result.ok(userDTOS);
     }
@@ -231,14 +222,10 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         // 使用MyBatis-Plus查询博客信息，并保持与Redis中相同的顺序
         List<Blog> blogs = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
 
-        for (Blog blog : blogs) {
-            // 5.1.查询blog有关的用户
-            // 查询并设置博客作者的信息
-            queryBlogUser(blog);
-            // 5.2.查询blog是否被点赞
-            // 查询当前用户是否对该博客点赞
-            isBlogLiked(blog);
-        }
+        // 5.1.批量查询blog有关的用户
+        queryBlogUsers(blogs);
+        // 5.2.批量查询blog是否被点赞
+        isBlogsLiked(blogs);
 
         // 6.封装并返回
         // 创建滚动分页结果对象
@@ -253,14 +240,53 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         return Result.ok(r);
     }
 
+    /**
+     * 批量查询博客作者，缓存命中时只需一次MGET
+     * @param blogs 博客列表
+     */
+    private void queryBlogUsers(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        Set<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toSet());
+        Map<Long, UserDTO> users = userService.queryUserDTOs(userIds);
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
+    }
+
+    /**
+     * 批量判断博客是否被当前用户点赞，多个ZSCORE通过管道一次发送
+     * @param blogs 博客列表
+     */
+    private void isBlogsLiked(List<Blog> blogs) {
+        // 1.获取登录用户
+        UserDTO user = UserHolder.getUser();
+        if (user == null || blogs.isEmpty()) {
+            // 用户未登录，无需查询是否点赞
+            return;
+        }
+        String userId = user.getId().toString();
+        // 2.通过管道查询当前用户在每个博客点赞集合中的score
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                conn.zScore(BLOG_LIKED_KEY + blog.getId(), userId);
+            }
+            return null;
+        });
+        // 3.score不为null则表示用户已点赞
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(scores.get(i) != null);
+        }
+    }
+
     private void queryBlogUser(Blog blog) {
-        // 获取博客作者的用户ID
-        Long userId = blog.getUserId();
-        // 根据用户ID查询用户信息
-        User user = userService.getById(userId);
-        // 将用户的昵称设置到博客对象中
-        blog.setName(user.getNickName());
-        // 将用户的头像设置到博客对象中
-        blog.setIcon(user.getIcon());
+        // 查询博客作者信息，与批量查询共用用户缓存
+        queryBlogUsers(Collections.singletonList(blog));
     }
 }
@@ -1,6 +1,5 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
@@ -14,6 +13,7 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -93,13 +93,8 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
         // 将字符串类型的用户ID转换为Long类型的ID列表
         List<Long> ids = intersect.stream().map(Long::valueOf).collect(Collectors.toList());
         // 4.查询用户
-        // 根据用户ID列表批量查询用户信息
-        // 将User对象转换为UserDTO对象，减少数据传输量
-        // 使用BeanUtil.copyProperties进行对象属性复制
-        List<UserDTO> users = userService.listByIds(ids)
-                .stream()
-                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
-                .collect(Collectors.toList());
+        // 根据用户ID列表批量查询用户信息，先查缓存，未命中的一次 IN 查询
+        List<UserDTO> users = new ArrayList<>(userService.queryUserDTOs(ids).values());
         // 返回共同关注的用户列表
         return Result.ok(users);
     }
@@ -7,8 +7,13 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.CacheChangePublisher;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheStrategy;
+import com.hmdp.utils.ShopAccessTracker;
+import com.hmdp.utils.ShopBloomFilter;
 import com.hmdp.utils.SystemConstants;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.geo.Distance;
 import org.springframework.data.geo.GeoResult;
 import org.springframework.data.geo.GeoResults;
@@ -22,6 +27,10 @@ import javax.annotation.Resource;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 
+import static com.hmdp.utils.CacheChangeConsumer.FIELD_SHOP_TYPE_ID;
+import static com.hmdp.utils.CacheChangeConsumer.TABLE_SHOP;
+import static com.hmdp.utils.CacheChangePublisher.OP_INSERT;
+import static com.hmdp.utils.CacheChangePublisher.OP_UPDATE;
 import static com.hmdp.utils.RedisConstants.*;
 
 /**
@@ -42,31 +51,85 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
-    @Override
-    public Result queryById(Long id) {
-        // 根据id查询商铺信息
-        // 使用缓存客户端查询，解决缓存穿透问题
-        // 参数说明：缓存key前缀、商铺id、返回值类型、查询函数、缓存时间、时间单位
-        Shop shop = cacheClient
-                .queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
 
-        // 以下是其他解决缓存击穿的方案(已注释)
-        // 方案1:使用互斥锁解决缓存击穿
-        // Shop shop = cacheClient
-        //         .queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    @Resource
+    private ShopAccessTracker shopAccessTracker;
+
+    @Resource
+    private CacheChangePublisher cacheChangePublisher;
 
-        // 方案2:使用逻辑过期解决缓存击穿
-        // Shop shop = cacheClient
-        //         .queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
+    @Value("${hmdp.cache.shop-strategy:PASS_THROUGH}")
+    private CacheStrategy shopCacheStrategy;
 
+    @Override
+    public Result queryById(Long id) {
+        // 根据id查询商铺信息
+        Shop shop = queryShop(id);
         // 判断商铺是否存在
         if (shop == null) {
             return Result.fail("店铺不存在！");
         }
+        // 只记录存在的商铺的访问次数，用于发布时预热热门商铺，避免随机id进入热门榜
+        shopAccessTracker.record(id);
         // 返回查询到的商铺信息
         return Result.ok(shop);
     }
 
+    @Override
+    public void preloadCache(Collection<Long> ids) {
+        ids.forEach(this::queryShop);
+    }
+
+    /**
+     * 按 hmdp.cache.shop-strategy 配置的策略查询商铺缓存
+     * 参数说明：缓存key前缀、商铺id、返回值类型、查询函数、缓存时间、时间单位
+     */
+    private Shop queryShop(Long id) {
+        switch (shopCacheStrategy) {
+            case MUTEX:
+                // 使用互斥锁解决缓存击穿
+                return cacheClient
+                        .queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            case LOGICAL_EXPIRE:
+                // 使用逻辑过期解决缓存击穿
+                return cacheClient
+                        .queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            case PROBABILISTIC_EXPIRE:
+                // 使用概率提前过期,避免大量key同时过期
+                return cacheClient
+                        .queryWithProbabilisticExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            default:
+                // 解决缓存穿透，先经过布隆过滤器拦截一定不存在的商铺id
+                return cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getShopCountingMiss,
+                        shopBloomFilter::mightContain, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * 只有布隆过滤器判断可能存在、缓存未命中时才会查询数据库，此时数据库中不存在才是一次误判
+     */
+    private Shop getShopCountingMiss(Long id) {
+        Shop shop = getById(id);
+        if (shop == null) {
+            shopBloomFilter.recordNotFound();
+        }
+        return shop;
+    }
+
+    @Override
+    public Result saveShop(Shop shop) {
+        // 1.写入数据库
+        save(shop);
+        // 2.加入布隆过滤器,否则新商铺会被当作不存在的id拦截
+        shopBloomFilter.add(shop.getId());
+        // 3.发布新增事件，写入GEO坐标
+        cacheChangePublisher.publish(TABLE_SHOP, OP_INSERT, shop.getId(), Collections.emptyMap());
+        // 返回店铺id
+        return Result.ok(shop.getId());
+    }
+
     @Override
     @Transactional // 添加事务注解,保证数据库操作的原子性
     public Result update(Shop shop) {
@@ -76,11 +139,17 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if (id == null) {
             return Result.fail("店铺id不能为空");
         }
-        // 1.更新数据库中的店铺信息
+        // 1.查询修改前的类型，类型变更时需要从旧类型的GEO中移除
+        Shop old = query().select("type_id").eq("id", id).one();
+        if (old == null) {
+            return Result.fail("店铺不存在！");
+        }
+        // 2.更新数据库中的店铺信息
         updateById(shop);
-        // 2.删除Redis缓存,保证缓存一致性
-        // 这里采用删除缓存的策略,而不是更新缓存,是为了避免缓存和数据库不一致的问题
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        // 3.发布变更事件,事务提交后才写入stream,由消费者删除缓存并刷新GEO坐标
+        // 在事务内删除缓存,提交前的并发读请求会把旧数据重新写入缓存
+        cacheChangePublisher.publish(TABLE_SHOP, OP_UPDATE, id,
+                Collections.singletonMap(FIELD_SHOP_TYPE_ID, String.valueOf(old.getTypeId())));
         // 返回更新成功的结果
         return Result.ok();
     }
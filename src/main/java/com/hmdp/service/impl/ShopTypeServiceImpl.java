@@ -4,8 +4,12 @@ import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheStrategy;
+import com.hmdp.utils.Cached;
 import org.springframework.stereotype.Service;
 
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +21,10 @@ import org.springframework.stereotype.Service;
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
+    @Override
+    @Cached(prefix = CACHE_SHOP_TYPE_KEY, key = "'list'", ttl = 30, strategy = CacheStrategy.LOGICAL_EXPIRE)
+    public ShopType[] queryTypeList() {
+        // 店铺类型几乎不变，使用逻辑过期，过期后异步刷新
+        return query().orderByAsc("sort").list().toArray(new ShopType[0]);
+    }
 }
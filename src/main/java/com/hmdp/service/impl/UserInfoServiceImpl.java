@@ -4,8 +4,12 @@ import com.hmdp.entity.UserInfo;
 import com.hmdp.mapper.UserInfoMapper;
 import com.hmdp.service.IUserInfoService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.Cached;
+import com.hmdp.utils.CachedEvict;
 import org.springframework.stereotype.Service;
 
+import static com.hmdp.utils.RedisConstants.CACHE_USER_INFO_KEY;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +21,20 @@ import org.springframework.stereotype.Service;
 @Service
 public class UserInfoServiceImpl extends ServiceImpl<UserInfoMapper, UserInfo> implements IUserInfoService {
 
+    @Override
+    @Cached(prefix = CACHE_USER_INFO_KEY, ttl = 30)
+    public UserInfo queryUserInfo(Long userId) {
+        UserInfo info = getById(userId);
+        if (info != null) {
+            info.setCreateTime(null);
+            info.setUpdateTime(null);
+        }
+        return info;
+    }
+
+    @Override
+    @CachedEvict(prefix = CACHE_USER_INFO_KEY, key = "#p0.userId")
+    public boolean updateById(UserInfo entity) {
+        return super.updateById(entity);
+    }
 }
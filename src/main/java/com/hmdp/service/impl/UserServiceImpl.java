@@ -4,6 +4,7 @@ import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
@@ -11,10 +12,20 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.Cached;
+import com.hmdp.utils.CachedEvict;
+import com.hmdp.utils.RedisScriptRegistry;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SignedTokenCodec;
+import com.hmdp.utils.TokenRevocationList;
+import com.hmdp.utils.TokenSessionCache;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
@@ -22,10 +33,13 @@ import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
@@ -42,9 +56,32 @@ import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
 @Service
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IUserService {
 
+    private static final String TOKEN_MODE_SIGNED = "signed";
+
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private TokenSessionCache tokenSessionCache;
+
+    @Resource
+    private RedisScriptRegistry redisScriptRegistry;
+
+    @Resource
+    private SignedTokenCodec signedTokenCodec;
+
+    @Resource
+    private TokenRevocationList tokenRevocationList;
+
+    /**
+     * 登录令牌类型 session|signed，session为Redis中的hash会话，signed为无状态的签名令牌
+     */
+    @Value("${hmdp.login.token-mode:session}")
+    private String tokenMode;
+
     @Override
     public Result sendCode(String phone, HttpSession session) {
         // 1.校验手机号
@@ -72,40 +109,93 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             // 2.如果不符合，返回错误信息
             return Result.fail("手机号格式错误！");
         }
-        // 3.从redis获取验证码并校验
-        String cacheCode = stringRedisTemplate.opsForValue().get(LOGIN_CODE_KEY + phone);
-        String code = loginForm.getCode();
-        if (cacheCode == null || !cacheCode.equals(code)) {
-            // 不一致，报错
+        String code = StrUtil.nullToEmpty(loginForm.getCode());
+        String codeKey = LOGIN_CODE_KEY + phone;
+
+        // 3.校验并删除验证码，未通过校验的请求不查询用户，也不写入手机号缓存
+        if (!verifyCode(codeKey, code)) {
             return Result.fail("验证码错误");
         }
 
-        // 4.一致，根据手机号查询用户 select * from tb_user where phone = ?
-        User user = query().eq("phone", phone).one();
+        // 4.根据手机号查询用户，手机号 -> 用户id 和用户信息都有缓存，老用户登录不查询数据库
+        UserDTO userDTO = queryUserDTOByPhone(phone);
+        if (userDTO == null) {
+            // 5.新用户，创建用户并删除手机号的空值缓存
+            User user = createUserWithPhone(phone);
+            cacheClient.delete(CACHE_USER_PHONE_KEY + phone);
+            userDTO = BeanUtil.copyProperties(user, UserDTO.class);
+        }
 
-        // 5.判断用户是否存在
-        if (user == null) {
-            // 6.不存在，创建新用户并保存
-            user = createUserWithPhone(phone);
+        // 6.签名令牌模式，令牌中包含用户信息；会话模式，保存会话后返回token
+        return Result.ok(TOKEN_MODE_SIGNED.equals(tokenMode)
+                ? signedTokenCodec.issue(userDTO) : saveSession(userDTO));
+    }
+
+    /**
+     * 根据手机号查询用户信息，手机号 -> 用户id 不会变化，缓存时间较长
+     * @return 用户不存在返回null
+     */
+    private UserDTO queryUserDTOByPhone(String phone) {
+        // 只查询和缓存用户id select id from tb_user where phone = ?
+        User idOnly = cacheClient.queryWithPassThrough(CACHE_USER_PHONE_KEY, phone, User.class,
+                p -> query().select("id").eq("phone", p).one(),
+                CACHE_USER_PHONE_TTL, TimeUnit.MINUTES);
+        if (idOnly == null) {
+            return null;
         }
+        // 用户信息与批量查询共用 cache:user:{id} 缓存
+        return queryUserDTOs(Collections.singletonList(idOnly.getId())).get(idOnly.getId());
+    }
+
+    /**
+     * 校验并删除验证码
+     */
+    private boolean verifyCode(String codeKey, String code) {
+        Long result = redisScriptRegistry.execute("login", Collections.singletonList(codeKey), code);
+        return result != null && result == 1;
+    }
 
-        // 7.保存用户信息到 redis中
-        // 7.1.随机生成token，作为登录令牌
+    /**
+     * 保存会话，HSET和EXPIRE通过管道一次发送
+     * @return 登录令牌
+     */
+    private String saveSession(UserDTO userDTO) {
         String token = UUID.randomUUID().toString(true);
-        // 7.2.将User对象转为HashMap存储
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
+        String tokenKey = LOGIN_USER_KEY + token;
+        Map<String, String> userMap = new HashMap<>();
+        toSessionMap(userDTO).forEach((field, value) -> userMap.put(field, value.toString()));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hMSet(tokenKey, userMap);
+            conn.expire(tokenKey, TimeUnit.MINUTES.toSeconds(LOGIN_USER_TTL));
+            return null;
+        });
+        return token;
+    }
+
+    /**
+     * 将UserDTO转为会话hash，忽略null字段
+     */
+    private Map<String, Object> toSessionMap(UserDTO userDTO) {
+        return BeanUtil.beanToMap(userDTO, new HashMap<>(),
                 CopyOptions.create()
                         .setIgnoreNullValue(true)
                         .setFieldValueEditor((fieldName, fieldValue) -> fieldValue.toString()));
-        // 7.3.存储
-        String tokenKey = LOGIN_USER_KEY + token;
-        stringRedisTemplate.opsForHash().putAll(tokenKey, userMap);
-        // 7.4.设置token有效期
-        stringRedisTemplate.expire(tokenKey, LOGIN_USER_TTL, TimeUnit.MINUTES);
+    }
 
-        // 8.返回token
-        return Result.ok(token);
+    @Override
+    public Result logout(String token) {
+        if (!signedTokenCodec.isSigned(token)) {
+            // 删除Redis会话，同时清理各节点的本地会话
+            tokenSessionCache.invalidate(token);
+            return Result.ok();
+        }
+        // 签名令牌无法删除，在过期之前加入吊销列表
+        SignedTokenCodec.Claims claims = signedTokenCodec.verify(token);
+        if (claims != null) {
+            tokenRevocationList.revoke(claims);
+        }
+        return Result.ok();
     }
 
     @Override
@@ -166,6 +256,28 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(count);
     }
 
+    @Override
+    @CachedEvict(prefix = CACHE_USER_KEY, key = "#p0.id") // 昵称、头像修改后删除用户公开信息的缓存
+    public boolean updateById(User entity) {
+        return super.updateById(entity);
+    }
+
+    @Override
+    @Cached(prefix = CACHE_USER_KEY, ttl = 30)
+    public UserDTO queryUserDTO(Long id) {
+        User user = getById(id);
+        return user == null ? null : BeanUtil.copyProperties(user, UserDTO.class);
+    }
+
+    @Override
+    public Map<Long, UserDTO> queryUserDTOs(Collection<Long> ids) {
+        // 缓存中只保存昵称、头像等公开信息，未命中的用户一次 IN 查询
+        return cacheClient.queryBatchWithPassThrough(CACHE_USER_KEY, ids, UserDTO.class,
+                missIds -> listByIds(missIds).stream()
+                        .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class))),
+                CACHE_USER_TTL, TimeUnit.MINUTES);
+    }
+
     private User createUserWithPhone(String phone) {
         // 1.创建用户
         User user = new User();
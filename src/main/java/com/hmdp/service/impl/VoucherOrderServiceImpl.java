@@ -1,6 +1,9 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.system.SystemUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
@@ -8,24 +11,38 @@ import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.RedisScriptRegistry;
+import com.hmdp.utils.SeckillSoldOutCache;
+import com.hmdp.utils.SeckillStockBuckets;
+import com.hmdp.utils.SeckillTimeWindowCache;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.StringRedisConnection;
 import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DLQ_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_GROUP;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
 
 /**
  * <p>
@@ -45,64 +62,125 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private RedisIdWorker redisIdWorker;
     @Resource
-    private RedissonClient redissonClient;
-    @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private SeckillSoldOutCache seckillSoldOutCache;
+    @Resource
+    private SeckillStockBuckets seckillStockBuckets;
+    @Resource
+    private RedisScriptRegistry redisScriptRegistry;
+    @Resource
+    private SeckillTimeWindowCache seckillTimeWindowCache;
 
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    /**
+     * 每个JVM实例启动的消费者数量
+     */
+    @Value("${hmdp.seckill.order-consumers:4}")
+    private int orderConsumers;
+    /**
+     * 每次从消息队列批量读取的订单数量
+     */
+    @Value("${hmdp.seckill.order-batch-size:100}")
+    private int orderBatchSize;
+    /**
+     * pending消息回收的执行间隔
+     */
+    @Value("${hmdp.seckill.reclaim-interval:5s}")
+    private Duration reclaimInterval;
+    /**
+     * pending消息空闲超过该时长才会被回收
+     */
+    @Value("${hmdp.seckill.reclaim-min-idle:60s}")
+    private Duration reclaimMinIdle;
+    /**
+     * 消息最大投递次数，超过后转入死信队列
+     */
+    @Value("${hmdp.seckill.max-deliveries:5}")
+    private long maxDeliveries;
 
-    static {
-        SECKILL_SCRIPT = new DefaultRedisScript<>();
-        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-        SECKILL_SCRIPT.setResultType(Long.class);
-    }
+    /**
+     * 秒杀lua脚本返回值对应的失败原因，5为本地校验发现优惠券不存在
+     */
+    private static final String[] SECKILL_FAIL_MESSAGES = {null, "库存不足", "不能重复下单", "秒杀尚未开始！", "秒杀已经结束！", "优惠券不存在"};
 
+    // 处理秒杀下单的消费者线程池，每个线程对应消费者组中的一个消费者
+    // 一人一单已由lua脚本在Redis中保证，多个消费者并发写库不会产生重复订单
+    private ExecutorService seckillOrderExecutor;
+    // 定时回收pending消息的线程
+    private ScheduledExecutorService pendingOrderReclaimer;
 
-    // 创建一个单线程的线程池，用于处理秒杀下单的异步任务
-    // 使用单线程可以避免多线程并发安全问题，确保订单处理的顺序性
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    private volatile boolean running = true;
 
     /**
      * 在服务启动时初始化异步处理线程
      * 使用@PostConstruct注解确保在服务实例化后立即执行此方法
-     * 将订单处理器提交到线程池中，开始监听消息队列
+     * 按配置启动多个消费者，开始监听消息队列
      */
     @PostConstruct
     private void init() {
-        // 向线程池提交VoucherOrderHandler任务，启动异步订单处理线程
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        // 确保消费者组存在 XGROUP CREATE stream.orders g1 0 MKSTREAM
+        createOrderGroupIfAbsent();
+        seckillOrderExecutor = Executors.newFixedThreadPool(
+                orderConsumers, new NamedThreadFactory("seckill-order-", false));
+        // 消费者名称 = 主机名-进程号-序号，保证多实例部署时消费者名称唯一
+        String instanceId = NetUtil.getLocalHostName() + "-" + SystemUtil.getCurrentPID();
+        for (int i = 0; i < orderConsumers; i++) {
+            seckillOrderExecutor.submit(new VoucherOrderHandler(instanceId + "-" + i));
+        }
+        // 启动pending消息回收任务
+        pendingOrderReclaimer = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory("seckill-order-reclaimer-", true));
+        pendingOrderReclaimer.scheduleWithFixedDelay(new PendingOrderReclaimer(instanceId + "-reclaimer"),
+                reclaimInterval.toMillis(), reclaimInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        // 停止消费循环，未确认的消息留在pending-list中，由后续消费者处理
+        running = false;
+        seckillOrderExecutor.shutdown();
+        pendingOrderReclaimer.shutdown();
+    }
+
+    private void createOrderGroupIfAbsent() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(
+                            SECKILL_ORDER_STREAM.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP, ReadOffset.from("0"), true));
+        } catch (Exception e) {
+            // BUSYGROUP：消费者组已存在
+            log.debug("消费者组已存在: {}", e.getMessage());
+        }
     }
 
     private class VoucherOrderHandler implements Runnable {
 
+        private final Consumer consumer;
+
+        private VoucherOrderHandler(String consumerName) {
+            this.consumer = Consumer.from(SECKILL_ORDER_GROUP, consumerName);
+        }
+
         @Override
         public void run() {
-            while (true) {
+            while (running) {
                 try {
-                    // 1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS s1 >
-                    // 使用Redis Stream的消费者组模式读取消息，g1是消费者组名称，c1是消费者名称
-                    // 一次读取一条消息，如果没有消息则阻塞2秒，从最后一次消费的位置开始读取
+                    // 1.批量获取消息队列中的订单信息 XREADGROUP GROUP g1 {consumer} COUNT 100 BLOCK 2000 STREAMS stream.orders >
+                    // 一次读取一批消息，如果没有消息则阻塞2秒，从最后一次消费的位置开始读取
                     List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create("stream.orders", ReadOffset.lastConsumed())
+                            consumer,
+                            StreamReadOptions.empty().count(orderBatchSize).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.lastConsumed())
                     );
                     // 2.判断订单信息是否为空
                     if (list == null || list.isEmpty()) {
                         // 如果为null，说明没有消息，继续下一次循环
                         continue;
                     }
-                    // 解析数据，从消息记录中提取订单信息
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    // 获取消息中的值部分，包含订单详情
-                    Map<Object, Object> value = record.getValue();
-                    // 将Map数据转换为VoucherOrder对象，true表示忽略大小写
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
-                    // 3.创建订单，调用订单创建方法处理实际业务逻辑
-                    createVoucherOrder(voucherOrder);
-                    // 4.确认消息 XACK，告知Redis该消息已被成功处理
-                    // 参数：流名称、消费者组名称、消息ID
-                    stringRedisTemplate.opsForStream().acknowledge("s1", "g1", record.getId());
+                    // 3.批量创建订单并确认消息
+                    handleOrderBatch(list);
                 } catch (Exception e) {
                     // 捕获处理过程中的异常并记录日志
                     log.error("处理订单异常", e);
@@ -114,34 +192,155 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         }
 
         private void handlePendingList() {
-            while (true) {
+            // 从pending-list的头部开始逐条处理，处理失败的消息跳过，留给PendingOrderReclaimer按重试次数处理
+            String lastId = "0";
+            while (running) {
                 try {
-                    // 1.获取pending-list中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS s1 0
+                    // 1.获取pending-list中的订单信息 XREADGROUP GROUP g1 {consumer} COUNT 100 STREAMS stream.orders {lastId}
                     List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1),
-                            StreamOffset.create("stream.orders", ReadOffset.from("0"))
+                            consumer,
+                            StreamReadOptions.empty().count(orderBatchSize),
+                            StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.from(lastId))
                     );
                     // 2.判断订单信息是否为空
                     if (list == null || list.isEmpty()) {
                         // 如果为null，说明没有异常消息，结束循环
                         break;
                     }
-                    // 解析数据
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> value = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
-                    // 3.创建订单
-                    createVoucherOrder(voucherOrder);
-                    // 4.确认消息 XACK
-                    stringRedisTemplate.opsForStream().acknowledge("s1", "g1", record.getId());
+                    // 3.批量处理失败后逐条处理，避免一条异常消息拖垮整批
+                    for (MapRecord<String, Object, Object> record : list) {
+                        lastId = record.getId().getValue();
+                        handleOrderRecord(record.getId(), record.getValue());
+                    }
                 } catch (Exception e) {
-                    log.error("处理订单异常", e);
+                    log.error("处理pending订单异常", e);
+                    break;
                 }
             }
         }
     }
 
+    /**
+     * 回收pending-list中长时间未确认的消息，包括宕机实例遗留的消息和处理失败的消息
+     * 超过投递次数上限的消息转入死信队列，避免毒消息无限重试
+     */
+    private class PendingOrderReclaimer implements Runnable {
+
+        private final String consumerName;
+
+        private PendingOrderReclaimer(String consumerName) {
+            this.consumerName = consumerName;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // 1.查询消费者组的pending-list XPENDING stream.orders g1 - + 100
+                PendingMessages pendingMessages = stringRedisTemplate.opsForStream()
+                        .pending(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, Range.unbounded(), orderBatchSize);
+                for (PendingMessage pending : pendingMessages) {
+                    // 2.只回收空闲时间超过阈值的消息，正在处理中的消息不受影响
+                    if (pending.getElapsedTimeSinceLastDelivery().compareTo(reclaimMinIdle) < 0) {
+                        continue;
+                    }
+                    reclaim(pending);
+                }
+            } catch (Exception e) {
+                log.error("回收pending订单异常", e);
+            }
+        }
+
+        private void reclaim(PendingMessage pending) {
+            // 3.认领消息 XCLAIM stream.orders g1 {consumer} {minIdle} {id}，多个实例同时认领时只有一个能成功
+            List<StringRecord> claimed = stringRedisTemplate.execute((RedisCallback<List<StringRecord>>) connection ->
+                    ((StringRedisConnection) connection).xClaim(
+                            SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, consumerName, reclaimMinIdle, pending.getId()));
+            if (claimed == null || claimed.isEmpty()) {
+                return;
+            }
+            StringRecord record = claimed.get(0);
+            // 4.超过投递次数上限，转入死信队列并确认
+            if (pending.getTotalDeliveryCount() >= maxDeliveries) {
+                Map<String, String> value = new HashMap<>(record.getValue());
+                value.put("sourceId", record.getId().getValue());
+                value.put("consumer", pending.getConsumerName());
+                value.put("deliveries", String.valueOf(pending.getTotalDeliveryCount()));
+                stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DLQ_STREAM, value);
+                stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, record.getId());
+                log.error("订单消息超过投递次数上限，已转入死信队列: {}", value);
+                return;
+            }
+            // 5.重新处理
+            handleOrderRecord(record.getId(), record.getValue());
+        }
+    }
+
+    /**
+     * 逐条处理订单消息，失败时保留在pending-list中等待回收
+     * @param recordId 消息id
+     * @param value 消息内容
+     */
+    private void handleOrderRecord(RecordId recordId, Map<?, ?> value) {
+        try {
+            VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
+            createVoucherOrder(voucherOrder);
+            // 确认消息 XACK
+            stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, recordId);
+        } catch (Exception e) {
+            log.error("处理订单消息{}异常", recordId, e);
+        }
+    }
+
+    /**
+     * 批量处理一批订单消息：一个事务内完成库存扣减和订单写入，成功后一次性确认整批消息
+     * @param records 消息队列中读取到的订单消息
+     */
+    private void handleOrderBatch(List<MapRecord<String, Object, Object>> records) {
+        List<VoucherOrder> orders = new ArrayList<>(records.size());
+        RecordId[] recordIds = new RecordId[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            MapRecord<String, Object, Object> record = records.get(i);
+            // 将Map数据转换为VoucherOrder对象，true表示忽略大小写
+            orders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+            recordIds[i] = record.getId();
+        }
+        // 批量创建订单
+        transactionTemplate.executeWithoutResult(status -> createVoucherOrders(orders));
+        // 批量确认消息 XACK stream.orders g1 id1 id2 ...
+        stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, recordIds);
+    }
+
+    /**
+     * 批量创建订单，按优惠券用一条INSERT IGNORE写入订单，再按实际写入的行数聚合扣减库存
+     * 一人一单已由lua脚本保证，数据库的(user_id, voucher_id)唯一索引兜底消息重复投递，因此无需加锁和查询
+     * @param orders 待创建的订单
+     */
+    private void createVoucherOrders(List<VoucherOrder> orders) {
+        // 1.按优惠券分组
+        Map<Long, List<VoucherOrder>> ordersByVoucher = orders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId));
+        for (Map.Entry<Long, List<VoucherOrder>> entry : ordersByVoucher.entrySet()) {
+            Long voucherId = entry.getKey();
+            // 2.写入订单，已存在的订单被忽略，返回值为实际写入的行数
+            int count = getBaseMapper().insertIgnoreBatch(entry.getValue());
+            if (count < entry.getValue().size()) {
+                log.warn("忽略重复订单{}条，voucherId={}", entry.getValue().size() - count, voucherId);
+            }
+            if (count == 0) {
+                continue;
+            }
+            // 3.聚合扣减库存 set stock = stock - n where voucher_id = ? and stock >= n
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + count)
+                    .eq("voucher_id", voucherId).ge("stock", count)
+                    .update();
+            if (!success) {
+                // Redis已扣减而数据库库存不足，说明数据不一致，回滚整批订单，由pending回收和死信队列处理
+                throw new IllegalStateException("库存不足！voucherId=" + voucherId + ", 订单数=" + count);
+            }
+        }
+    }
+
     /*private BlockingQueue<VoucherOrder> orderTasks = new ArrayBlockingQueue<>(1024 * 1024);
     private class VoucherOrderHandler implements Runnable{
 
@@ -161,72 +360,130 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     }*/
 
     private void createVoucherOrder(VoucherOrder voucherOrder) {
-        Long userId = voucherOrder.getUserId();
-        Long voucherId = voucherOrder.getVoucherId();
-        // 创建锁对象
-        RLock redisLock = redissonClient.getLock("lock:order:" + userId);
-        // 尝试获取锁
-        boolean isLock = redisLock.tryLock();
-        // 判断
-        if (!isLock) {
-            // 获取锁失败，直接返回失败或者重试
-            log.error("不允许重复下单！");
-            return;
-        }
-
-        try {
-            // 5.1.查询订单
-            int count = query().eq("user_id", userId).eq("voucher_id", voucherId).count();
-            // 5.2.判断是否存在
-            if (count > 0) {
-                // 用户已经购买过了
-                log.error("不允许重复下单！");
-                return;
-            }
-
-            // 6.扣减库存
-            boolean success = seckillVoucherService.update()
-                    .setSql("stock = stock - 1") // set stock = stock - 1
-                    .eq("voucher_id", voucherId).gt("stock", 0) // where id = ? and stock > 0
-                    .update();
-            if (!success) {
-                // 扣减失败
-                log.error("库存不足！");
-                return;
-            }
-
-            // 7.创建订单
-            save(voucherOrder);
-        } finally {
-            // 释放锁
-            redisLock.unlock();
-        }
+        transactionTemplate.executeWithoutResult(status -> createVoucherOrders(Collections.singletonList(voucherOrder)));
     }
 
     @Override
     public Result seckillVoucher(Long voucherId) {
+        // 0.本地校验秒杀时间和售罄标记，不通过直接返回，不再访问Redis
+        Result rejected = checkLocalGate(voucherId);
+        if (rejected != null) {
+            return rejected;
+        }
         // 获取当前用户ID
         Long userId = UserHolder.getUser().getId();
         // 生成全局唯一的订单ID
         long orderId = redisIdWorker.nextId("order");
         // 1.执行lua脚本，保证库存检查、一人一单和创建订单的原子性
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(), // 无KEYS参数
-                voucherId.toString(), userId.toString(), String.valueOf(orderId) // ARGV参数：优惠券ID、用户ID、订单ID
-        );
-        // 将返回结果转为int类型
-        int r = result.intValue();
-        // 2.判断结果是否为0
+        Long result;
+        if (seckillStockBuckets.bucketCount(voucherId) > 1) {
+            // 分桶模式，在用户所在的桶执行，库存不足时向相邻桶借库存
+            result = seckillStockBuckets.seckill(voucherId, userId, orderId);
+        } else {
+            result = redisScriptRegistry.execute(
+                    "seckill",
+                    Collections.emptyList(), // 无KEYS参数
+                    voucherId.toString(), userId.toString(), String.valueOf(orderId), // ARGV参数：优惠券ID、用户ID、订单ID
+                    String.valueOf(System.currentTimeMillis()) // 当前时间，用于校验秒杀时间
+            );
+        }
+        // 2.根据脚本返回值返回结果
+        if (result.intValue() == 1) {
+            // 库存不足，标记售罄并广播到其它节点
+            seckillSoldOutCache.markSoldOut(voucherId);
+        }
+        return toSeckillResult(result.intValue(), orderId);
+    }
+
+    @Override
+    public Mono<Result> seckillVoucherReactive(Long voucherId) {
+        // 0.本地校验秒杀时间和售罄标记
+        Result rejected = checkLocalGate(voucherId);
+        if (rejected != null) {
+            return Mono.just(rejected);
+        }
+        // 用户信息保存在ThreadLocal中，必须在切换线程之前取出
+        Long userId = UserHolder.getUser().getId();
+        // 1.生成订单ID、查询分桶数量并执行lua脚本，Redis调用都由Lettuce异步完成，不占用Tomcat线程
+        // 之后的回调运行在Lettuce事件循环线程上，不能再调用阻塞的RedisTemplate
+        return redisIdWorker.nextIdReactive("order")
+                .flatMap(orderId -> seckillStockBuckets.bucketCountReactive(voucherId)
+                        .flatMap(buckets -> buckets > 1
+                                ? seckillStockBuckets.seckillReactive(voucherId, userId, orderId, buckets)
+                                : redisScriptRegistry.executeReactive("seckill", Collections.emptyList(),
+                                        voucherId.toString(), userId.toString(), String.valueOf(orderId),
+                                        String.valueOf(System.currentTimeMillis())))
+                        // 2.根据脚本返回值返回结果，库存不足时通过响应式模板广播售罄
+                        .flatMap(r -> r.intValue() == 1
+                                ? seckillSoldOutCache.markSoldOutReactive(voucherId)
+                                        .thenReturn(toSeckillResult(r.intValue(), orderId))
+                                : Mono.just(toSeckillResult(r.intValue(), orderId))));
+    }
+
+    /**
+     * 本地校验秒杀时间和售罄标记
+     * @param voucherId 优惠券id
+     * @return 校验不通过时返回失败结果，通过时返回null
+     */
+    private Result checkLocalGate(Long voucherId) {
+        // 本地秒杀时间窗口，秒杀开始前、结束后和优惠券不存在时直接返回，不再访问Redis
+        int window = seckillTimeWindowCache.check(voucherId, seckillVoucherService::getById);
+        if (window != SeckillTimeWindowCache.IN_WINDOW) {
+            return Result.fail(SECKILL_FAIL_MESSAGES[window]);
+        }
+        // 本地售罄标记，已售罄直接返回，不再访问Redis
+        if (seckillSoldOutCache.isSoldOut(voucherId)) {
+            return Result.fail(SECKILL_FAIL_MESSAGES[1]);
+        }
+        return null;
+    }
+
+    /**
+     * 将秒杀lua脚本的返回值转换为结果
+     * @param r 脚本返回值
+     * @param orderId 订单id
+     * @return 下单结果
+     */
+    private Result toSeckillResult(int r, long orderId) {
+        // 判断结果是否为0
         if (r != 0) {
-            // 2.1.不为0，代表没有购买资格
-            // 根据返回值判断失败原因：1表示库存不足，2表示重复下单
-            return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
+            // 不为0，代表没有购买资格，根据返回值判断失败原因：1表示库存不足，2表示重复下单，3表示尚未开始，4表示已经结束
+            return Result.fail(SECKILL_FAIL_MESSAGES[r]);
         }
-        // 3.返回订单id，下单成功
+        // 返回订单id，下单成功
         return Result.ok(orderId);
     }
 
+    @Override
+    public int replayDeadLetterOrders(int count) {
+        // 1.读取死信队列中的消息 XRANGE stream.orders.dlq - + COUNT count
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().range(
+                SECKILL_ORDER_DLQ_STREAM, Range.unbounded(), RedisZSetCommands.Limit.limit().count(count));
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<Object, Object> value = record.getValue();
+            // 2.按原始格式重新投递到订单队列 XADD stream.orders * userId .. voucherId .. id ..
+            Map<String, Object> order = new HashMap<>(4);
+            order.put("userId", value.get("userId"));
+            order.put("voucherId", value.get("voucherId"));
+            order.put("id", value.get("id"));
+            stringRedisTemplate.opsForStream().add(SECKILL_ORDER_STREAM, order);
+            // 3.从死信队列删除 XDEL
+            stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_DLQ_STREAM, record.getId());
+        }
+        log.info("重新投递死信订单{}条", records.size());
+        return records.size();
+    }
+
+    @Override
+    public long countDeadLetterOrders() {
+        // XLEN stream.orders.dlq
+        Long size = stringRedisTemplate.opsForStream().size(SECKILL_ORDER_DLQ_STREAM);
+        return size == null ? 0 : size;
+    }
+
     /*@Override
     public Result seckillVoucher(Long voucherId) {
         Long userId = UserHolder.getUser().getId();
@@ -341,7 +598,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         Long userId = UserHolder.getUser().getId();
 
         // 创建锁对象
-        SimpleRedisLock redisLock = new SimpleRedisLock("order:" + userId, stringRedisTemplate);
+        SimpleRedisLock redisLock = new SimpleRedisLock("order:" + userId, stringRedisTemplate, redisScriptRegistry);
         // 尝试获取锁
         boolean isLock = redisLock.tryLock(1200);
         // 判断
@@ -1,5 +1,6 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
@@ -7,14 +8,22 @@ import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.Cached;
+import com.hmdp.utils.CachedEvict;
+import com.hmdp.utils.SeckillSoldOutCache;
+import com.hmdp.utils.SeckillStockBuckets;
+import com.hmdp.utils.SeckillTimeWindowCache;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_OF_SHOP_KEY;
 
 /**
  * <p>
@@ -30,18 +39,57 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private ISeckillVoucherService seckillVoucherService;
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private SeckillStockBuckets seckillStockBuckets;
+    @Resource
+    private SeckillSoldOutCache seckillSoldOutCache;
+    @Resource
+    private SeckillTimeWindowCache seckillTimeWindowCache;
 
     @Override
-    public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
+    @Cached(prefix = CACHE_VOUCHER_OF_SHOP_KEY, ttl = 30)
+    public Voucher[] queryVoucherOfShop(Long shopId) {
+        // 查询优惠券信息，列表只在新增优惠券时变化，秒杀库存随下单变化，不放入缓存
         List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
-        // 返回结果
-        return Result.ok(vouchers);
+        vouchers.forEach(voucher -> voucher.setStock(null));
+        return vouchers.toArray(new Voucher[0]);
+    }
+
+    @Override
+    public List<Voucher> fillRemainingStock(Voucher[] vouchers) {
+        if (vouchers == null) {
+            return Collections.emptyList();
+        }
+        // 1.秒杀券(关联了秒杀时间)的库存从Redis读取
+        List<Long> seckillIds = Arrays.stream(vouchers)
+                .filter(voucher -> voucher.getBeginTime() != null)
+                .map(Voucher::getId)
+                .collect(Collectors.toList());
+        Map<Long, Integer> stocks = seckillStockBuckets.remainingStocks(seckillIds);
+        // 2.缓存返回的对象可能来自本地缓存、被其它线程共享，复制后再设置库存，不修改缓存中的对象
+        return Arrays.stream(vouchers)
+                .map(voucher -> BeanUtil.copyProperties(voucher, Voucher.class).setStock(stocks.get(voucher.getId())))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public Result querySeckillWindow(Long voucherId) {
+        // 从本地内存查询秒杀时间，首次查询时从Redis或数据库加载
+        Map<String, Long> window = seckillTimeWindowCache.query(voucherId, seckillVoucherService::getById);
+        if (window == null) {
+            return Result.fail("秒杀券不存在！");
+        }
+        return Result.ok(window);
+    }
+
+    @Override
+    @CachedEvict(prefix = CACHE_VOUCHER_OF_SHOP_KEY, key = "#voucher.shopId")
+    public void addVoucher(Voucher voucher) {
+        save(voucher);
     }
 
     @Override
     @Transactional // 添加事务注解,确保数据的一致性
+    @CachedEvict(prefix = CACHE_VOUCHER_OF_SHOP_KEY, key = "#voucher.shopId") // 事务提交后删除店铺的优惠券列表缓存
     public void addSeckillVoucher(Voucher voucher) {
         // 保存优惠券基本信息到tb_voucher表
         save(voucher);
@@ -57,7 +105,9 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setEndTime(voucher.getEndTime());
         // 保存秒杀信息到tb_seckill_voucher表
         seckillVoucherService.save(seckillVoucher);
-        // 保存秒杀库存到Redis中,key为前缀+优惠券id,value为库存值
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        // 保存秒杀库存和秒杀时间到Redis中,分桶模式下库存拆分到多个桶
+        seckillStockBuckets.init(voucher.getId(), voucher.getStock(), voucher.getBeginTime(), voucher.getEndTime());
+        // 清除各节点的本地售罄标记
+        seckillSoldOutCache.clear(voucher.getId());
     }
 }
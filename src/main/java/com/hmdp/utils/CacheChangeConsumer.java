@@ -0,0 +1,271 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.net.NetUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.system.SystemUtil;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StringRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.CacheChangePublisher.FIELD_ID;
+import static com.hmdp.utils.CacheChangePublisher.FIELD_TABLE;
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 数据变更事件的消费者，代替订阅binlog的同步服务：
+ * 从 stream.cache.changes 批量读取事件，按表删除缓存并刷新商铺GEO坐标，可选延迟双删
+ * 每个实例是消费者组中的一个消费者，一条事件只会被一个实例处理，各节点的本地缓存通过失效消息清理
+ * 处理失败或消费者退出后留在pending-list中的事件由定时任务认领重试，超过投递次数上限转入死信队列
+ */
+@Slf4j
+@Component
+public class CacheChangeConsumer {
+
+    /**
+     * 商铺变更事件中修改前的类型id
+     */
+    public static final String FIELD_SHOP_TYPE_ID = "typeId";
+
+    public static final String TABLE_SHOP = "tb_shop";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Value("${hmdp.cache.invalidation.batch-size:100}")
+    private int batchSize;
+
+    /**
+     * 延迟双删的间隔，为0时不启用
+     */
+    @Value("${hmdp.cache.invalidation.double-delete-delay:0s}")
+    private Duration doubleDeleteDelay;
+
+    @Value("${hmdp.cache.invalidation.stream-max-length:10000}")
+    private long streamMaxLength;
+
+    /**
+     * pending事件回收的执行间隔
+     */
+    @Value("${hmdp.cache.invalidation.reclaim-interval:5s}")
+    private Duration reclaimInterval;
+
+    /**
+     * pending事件空闲超过该时长才会被回收
+     */
+    @Value("${hmdp.cache.invalidation.reclaim-min-idle:30s}")
+    private Duration reclaimMinIdle;
+
+    /**
+     * 事件最大投递次数，超过后转入死信队列
+     */
+    @Value("${hmdp.cache.invalidation.max-deliveries:5}")
+    private long maxDeliveries;
+
+    private ScheduledExecutorService executor;
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    private void init() {
+        // 确保消费者组存在 XGROUP CREATE stream.cache.changes cache-invalidator $ MKSTREAM
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                    connection.streamCommands().xGroupCreate(CACHE_CHANGE_STREAM.getBytes(StandardCharsets.UTF_8),
+                            CACHE_CHANGE_GROUP, ReadOffset.latest(), true));
+        } catch (Exception e) {
+            // BUSYGROUP：消费者组已存在
+            log.debug("消费者组已存在: {}", e.getMessage());
+        }
+        // 一个消费线程，pending事件回收和延迟双删也在这个线程池中执行
+        executor = Executors.newScheduledThreadPool(2, new NamedThreadFactory("cache-change-", true));
+        String consumerName = NetUtil.getLocalHostName() + "-" + SystemUtil.getCurrentPID();
+        executor.execute(() -> consume(Consumer.from(CACHE_CHANGE_GROUP, consumerName)));
+        // 进程重启后消费者名称会变化，上一个进程未确认的事件只能通过XCLAIM认领
+        executor.scheduleWithFixedDelay(() -> reclaim(consumerName),
+                reclaimInterval.toMillis(), reclaimInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        executor.shutdown();
+    }
+
+    private void consume(Consumer consumer) {
+        while (running) {
+            try {
+                // XREADGROUP GROUP cache-invalidator {consumer} COUNT 100 BLOCK 2000 STREAMS stream.cache.changes >
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(
+                        consumer,
+                        StreamReadOptions.empty().count(batchSize).block(Duration.ofSeconds(2)),
+                        StreamOffset.create(CACHE_CHANGE_STREAM, ReadOffset.lastConsumed()));
+                if (records == null || records.isEmpty()) {
+                    continue;
+                }
+                List<Map<String, String>> events = records.stream()
+                        .map(record -> record.getValue().entrySet().stream().collect(Collectors.toMap(
+                                e -> e.getKey().toString(), e -> e.getValue().toString())))
+                        .collect(Collectors.toList());
+                apply(events);
+                // 批量确认并裁剪stream，只保留最近的事件
+                RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+                stringRedisTemplate.opsForStream().acknowledge(CACHE_CHANGE_STREAM, CACHE_CHANGE_GROUP, ids);
+                stringRedisTemplate.opsForStream().trim(CACHE_CHANGE_STREAM, streamMaxLength, true);
+            } catch (Exception e) {
+                // 处理失败的事件留在pending-list中，由回收任务逐条重试，不阻塞后续事件
+                log.error("处理数据变更事件异常", e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    /**
+     * 认领空闲时间超过阈值的pending事件并逐条重试，包括已退出的消费者留下的事件
+     * @param consumerName 认领到的消费者名称
+     */
+    private void reclaim(String consumerName) {
+        try {
+            // 1.查询消费者组的pending-list XPENDING stream.cache.changes cache-invalidator - + 100
+            PendingMessages pendingMessages = stringRedisTemplate.opsForStream()
+                    .pending(CACHE_CHANGE_STREAM, CACHE_CHANGE_GROUP, Range.unbounded(), batchSize);
+            for (PendingMessage pending : pendingMessages) {
+                // 2.只回收空闲时间超过阈值的事件，正在处理中的事件不受影响
+                if (pending.getElapsedTimeSinceLastDelivery().compareTo(reclaimMinIdle) < 0) {
+                    continue;
+                }
+                reclaim(consumerName, pending);
+            }
+        } catch (Exception e) {
+            log.error("回收pending数据变更事件异常", e);
+        }
+    }
+
+    private void reclaim(String consumerName, PendingMessage pending) {
+        // 3.认领事件 XCLAIM stream.cache.changes cache-invalidator {consumer} {minIdle} {id}，多个实例同时认领时只有一个能成功
+        List<StringRecord> claimed = stringRedisTemplate.execute((RedisCallback<List<StringRecord>>) connection ->
+                ((StringRedisConnection) connection).xClaim(
+                        CACHE_CHANGE_STREAM, CACHE_CHANGE_GROUP, consumerName, reclaimMinIdle, pending.getId()));
+        if (claimed == null || claimed.isEmpty()) {
+            return;
+        }
+        StringRecord record = claimed.get(0);
+        // 4.超过投递次数上限，转入死信队列并确认
+        if (pending.getTotalDeliveryCount() >= maxDeliveries) {
+            Map<String, String> value = new HashMap<>(record.getValue());
+            value.put("sourceId", record.getId().getValue());
+            value.put("consumer", pending.getConsumerName());
+            value.put("deliveries", String.valueOf(pending.getTotalDeliveryCount()));
+            stringRedisTemplate.opsForStream().add(CACHE_CHANGE_DLQ_STREAM, value);
+            stringRedisTemplate.opsForStream().acknowledge(CACHE_CHANGE_STREAM, CACHE_CHANGE_GROUP, record.getId());
+            log.error("数据变更事件超过投递次数上限，已转入死信队列: {}", value);
+            return;
+        }
+        // 5.单独重新处理这一条事件，失败时留在pending-list中等待下一次回收
+        try {
+            apply(Collections.singletonList(record.getValue()));
+            stringRedisTemplate.opsForStream().acknowledge(CACHE_CHANGE_STREAM, CACHE_CHANGE_GROUP, record.getId());
+        } catch (Exception e) {
+            log.error("重试数据变更事件{}异常", record.getId(), e);
+        }
+    }
+
+    /**
+     * 处理一批变更事件：批量删除缓存key，通过管道刷新GEO坐标
+     * @param events 变更事件
+     */
+    public void apply(List<Map<String, String>> events) {
+        Set<String> keys = new LinkedHashSet<>();
+        List<Map<String, String>> shopEvents = new ArrayList<>();
+        for (Map<String, String> event : events) {
+            if (TABLE_SHOP.equals(event.get(FIELD_TABLE))) {
+                keys.add(CACHE_SHOP_KEY + event.get(FIELD_ID));
+                shopEvents.add(event);
+            } else {
+                log.warn("未知的数据变更事件: {}", event);
+            }
+        }
+        // 1.删除缓存，同时广播本地缓存失效消息
+        cacheClient.delete(keys);
+        // 2.刷新商铺的GEO坐标
+        refreshShopGeo(shopEvents);
+        // 3.延迟双删：删除期间读到旧数据库数据的请求可能把旧值写回缓存，延迟后再删除一次
+        if (!doubleDeleteDelay.isZero() && !keys.isEmpty()) {
+            executor.schedule(() -> cacheClient.delete(keys), doubleDeleteDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refreshShopGeo(List<Map<String, String>> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        // 1.按id批量查询变更后的商铺，不存在说明已删除
+        Set<Long> ids = events.stream().map(e -> Long.valueOf(e.get(FIELD_ID))).collect(Collectors.toSet());
+        Map<Long, Shop> shops = new HashMap<>(ids.size());
+        shopMapper.selectBatchIds(ids).forEach(shop -> shops.put(shop.getId(), shop));
+        // 2.类型变更或删除时从旧类型的GEO中移除，再写入当前坐标
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Map<String, String> event : events) {
+                String id = event.get(FIELD_ID);
+                Shop shop = shops.get(Long.valueOf(id));
+                String oldTypeId = event.get(FIELD_SHOP_TYPE_ID);
+                if (oldTypeId != null && (shop == null || !Objects.equals(oldTypeId, String.valueOf(shop.getTypeId())))) {
+                    conn.zRem(SHOP_GEO_KEY + oldTypeId, id);
+                }
+                if (shop != null && shop.getX() != null && shop.getY() != null) {
+                    conn.geoAdd(SHOP_GEO_KEY + shop.getTypeId(),
+                            new Point(shop.getX(), shop.getY()), id);
+                }
+            }
+            return null;
+        });
+    }
+
+    private void sleepQuietly() {
+        try {
+            TimeUnit.SECONDS.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
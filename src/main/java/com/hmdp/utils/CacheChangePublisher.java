@@ -0,0 +1,95 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.CACHE_CHANGE_STREAM;
+
+/**
+ * 数据变更事件的发布者，模拟binlog：事务提交之后才把变更事件写入 stream.cache.changes，
+ * 由 {@link CacheChangeConsumer} 删除缓存并刷新GEO，避免在事务内删除缓存后被并发读请求写回旧数据
+ */
+@Slf4j
+@Component
+public class CacheChangePublisher {
+
+    public static final String FIELD_TABLE = "table";
+    public static final String FIELD_OP = "op";
+    public static final String FIELD_ID = "id";
+
+    public static final String OP_INSERT = "INSERT";
+    public static final String OP_UPDATE = "UPDATE";
+    public static final String OP_DELETE = "DELETE";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheChangeConsumer cacheChangeConsumer;
+
+    /**
+     * 发布一条变更事件，存在事务时在提交后发布，回滚则丢弃，没有事务时立即发布
+     * @param table 表名
+     * @param op 操作类型
+     * @param id 主键
+     * @param fields 变更前的字段，例如修改前的类型id，用于清理旧的GEO数据
+     */
+    public void publish(String table, String op, Long id, Map<String, String> fields) {
+        Map<String, String> event = new HashMap<>(fields);
+        event.put(FIELD_TABLE, table);
+        event.put(FIELD_OP, op);
+        event.put(FIELD_ID, id.toString());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            send(Collections.singletonList(event));
+            return;
+        }
+        // 同一个事务内的事件收集起来，提交后一次发送
+        @SuppressWarnings("unchecked")
+        List<Map<String, String>> pending = (List<Map<String, String>>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<Map<String, String>> events = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, events);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send(events);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CacheChangePublisher.this);
+                }
+            });
+            pending = events;
+        }
+        pending.add(event);
+    }
+
+    /**
+     * 通过管道写入stream，写入失败时在本节点直接处理，保证缓存不会一直是旧数据
+     */
+    private void send(List<Map<String, String>> events) {
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                events.forEach(event -> conn.xAdd(CACHE_CHANGE_STREAM, event));
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("发布数据变更事件失败，直接处理: {}", events, e);
+            cacheChangeConsumer.apply(events);
+        }
+    }
+}
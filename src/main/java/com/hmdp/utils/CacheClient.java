@@ -1,36 +1,192 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
 import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
-import static com.hmdp.utils.RedisConstants.LOCK_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_REBUILT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOCK_CACHE_KEY;
+import static com.hmdp.utils.RedisConstants.LOCK_SHOP_TTL;
 
 @Slf4j
 @Component
-public class CacheClient {
+public class CacheClient implements MessageListener {
+
+    /**
+     * 本地缓存中代表空值的占位对象，对应Redis中缓存的""
+     */
+    private static final Object NULL_VALUE = new Object();
+
+    /**
+     * 空值缓存，对应原来的""
+     */
+    private static final byte[] NULL_BYTES = new byte[0];
 
     private final StringRedisTemplate stringRedisTemplate;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 读写缓存数据，value为CacheCodec编码后的字节
+     */
+    private final RedisTemplate<String, byte[]> bytesRedisTemplate;
+
+    private final CacheCodec codec;
+
+    /**
+     * 本地一级缓存，未启用时为null
+     */
+    private final Cache<String, Object> localCache;
+
+    private final CacheRebuildExecutor cacheRebuildExecutor;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    private final HotKeyDetector hotKeyDetector;
+
+    /**
+     * 过期时间的随机浮动比例，避免同时写入的key同时过期
+     */
+    private final double ttlJitter;
+
+    /**
+     * 概率提前过期的系数，越大越倾向于提前刷新
+     */
+    private final double xfetchBeta;
+
+    /**
+     * 预热写入的数据没有单独重建的耗时，使用该估计值作为delta的下限(毫秒)
+     */
+    private final long xfetchWarmUpDelta;
+
+    /**
+     * 未获取到锁时单次等待重建消息的时间
+     */
+    private static final long REBUILD_WAIT_MILLIS = 500;
+
+    /**
+     * 本节点正在加载的key -> 加载结果
+     */
+    private final Map<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+
+    /**
+     * 等待其它节点重建的key -> 重建完成信号
+     */
+    private final Map<String, CompletableFuture<Void>> rebuildSignals = new ConcurrentHashMap<>();
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, RedisTemplate<String, byte[]> bytesRedisTemplate,
+                       List<CacheCodec> codecs, @Value("${hmdp.cache.codec:json}") String codecName,
+                       RedisMessageListenerContainer container, CacheRebuildExecutor cacheRebuildExecutor,
+                       HotKeyDetector hotKeyDetector,
+                       @Value("${hmdp.cache.local.enabled:false}") boolean localEnabled,
+                       @Value("${hmdp.cache.local.maximum-size:10000}") long localMaximumSize,
+                       @Value("${hmdp.cache.local.ttl:30s}") Duration localTtl,
+                       @Value("${hmdp.cache.ttl-jitter:0.1}") double ttlJitter,
+                       @Value("${hmdp.cache.xfetch-beta:1.0}") double xfetchBeta,
+                       @Value("${hmdp.cache.xfetch-warm-up-delta:50ms}") Duration xfetchWarmUpDelta) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.bytesRedisTemplate = bytesRedisTemplate;
+        this.codec = codecs.stream()
+                .filter(c -> c.name().equals(codecName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("不支持的缓存编码: " + codecName));
+        this.ttlJitter = ttlJitter;
+        this.xfetchBeta = xfetchBeta;
+        this.xfetchWarmUpDelta = xfetchWarmUpDelta.toMillis();
+        this.cacheRebuildExecutor = cacheRebuildExecutor;
+        this.hotKeyDetector = hotKeyDetector;
+        if (localEnabled) {
+            this.localCache = Caffeine.newBuilder()
+                    .maximumSize(localMaximumSize)
+                    .expireAfterWrite(localTtl)
+                    .build();
+        } else {
+            this.localCache = null;
+        }
+        // 订阅缓存失效消息，其它节点删除缓存时同步清理本地缓存和热点key副本
+        container.addMessageListener(this, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        // 订阅缓存重建完成的消息，唤醒等待的请求
+        container.addMessageListener(this, new ChannelTopic(CACHE_REBUILT_CHANNEL));
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        bytesRedisTemplate.opsForValue().set(key, codec.encode(value), time, unit);
+        putLocal(key, value);
+    }
+
+    /**
+     * 删除缓存，同时清理本节点的本地缓存并广播给其它节点
+     * @param key 缓存key
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        invalidateLocal(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    /**
+     * 批量删除缓存，一次DEL删除Redis中的key，失效消息通过管道一次发送
+     * @param keys 缓存key
+     */
+    public void delete(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.delete(keys);
+        keys.forEach(this::invalidateLocal);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.publish(CACHE_INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                        key.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (CACHE_REBUILT_CHANNEL.equals(channel)) {
+            CompletableFuture<Void> signal = rebuildSignals.remove(key);
+            if (signal != null) {
+                signal.complete(null);
+            }
+            return;
+        }
+        invalidateLocal(key);
+        log.debug("收到缓存失效消息, key: {}", key);
     }
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
@@ -39,7 +195,7 @@ public class CacheClient {
         redisData.setData(value);
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
         // 写入Redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        bytesRedisTemplate.opsForValue().set(key, codec.encodeWithExpire(redisData));
     }
 
     /**
@@ -56,17 +212,39 @@ public class CacheClient {
      */
     public <R,ID> R queryWithPassThrough(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit){
+        return queryWithPassThrough(keyPrefix, id, type, dbFallback, null, time, unit);
+    }
+
+    /**
+     * 缓存穿透解决方案，先用布隆过滤器拦截一定不存在的id，不再为它们写入空值缓存和查询数据库
+     * @param mightExist 判断id是否可能存在的函数，为null时不拦截
+     */
+    public <R,ID> R queryWithPassThrough(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Predicate<ID> mightExist,
+            Long time, TimeUnit unit){
         String key = keyPrefix + id;
-        // 1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
-        // 2.判断是否存在
-        if (StrUtil.isNotBlank(json)) {
-            // 3.存在，直接返回,将JSON字符串反序列化为对象
-            return JSONUtil.toBean(json, type);
+        // 1.先查本地缓存
+        Object local = getLocal(key);
+        if (local != null) {
+            return local == NULL_VALUE ? null : type.cast(local);
         }
-        // 判断命中的是否是空值,这里的null是""空字符串
-        if (json != null) {
+        // 布隆过滤器判断一定不存在，直接返回
+        if (mightExist != null && !mightExist.test(id)) {
+            return null;
+        }
+        // 2.再从redis查询商铺缓存
+        byte[] bytes = getBytes(key);
+        // 判断是否存在
+        if (bytes != null && bytes.length > 0) {
+            // 3.存在，解码为对象，放入本地缓存后返回
+            R r = codec.decode(bytes, type);
+            putLocal(key, r);
+            return r;
+        }
+        // 判断命中的是否是空值,这里的null是长度为0的空值
+        if (bytes != null) {
             // 返回错误信息,缓存穿透的时候会返回
+            putLocal(key, NULL_VALUE);
             return null;
         }
 
@@ -75,15 +253,142 @@ public class CacheClient {
         // 5.数据库也不存在，返回错误
         if (r == null) {
             // 将空值写入redis,解决缓存穿透问题
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            bytesRedisTemplate.opsForValue().set(key, NULL_BYTES, CACHE_NULL_TTL, TimeUnit.MINUTES);
+            putLocal(key, NULL_VALUE);
             // 返回错误信息
             return null;
         }
-        // 6.存在，写入redis,设置过期时间
-        this.set(key, r, time, unit);
+        // 6.存在，写入redis,设置随机浮动的过期时间
+        this.set(key, r, withJitter(time, unit), TimeUnit.MILLISECONDS);
         return r;
     }
 
+    /**
+     * 批量查询的缓存穿透解决方案：一次MGET查询缓存，未命中的id一次性查询数据库，再通过管道批量写回
+     * @param keyPrefix key前缀
+     * @param ids 查询的id集合
+     * @param type 返回值类型
+     * @param dbFallback 批量查询数据库的函数，返回 id -> 数据，不存在的id不返回
+     * @param time 过期时间
+     * @param unit 时间单位
+     * @return id -> 数据，按ids的顺序排列，不存在的id不包含在内
+     */
+    public <R, ID> Map<ID, R> queryBatchWithPassThrough(
+            String keyPrefix, Collection<ID> ids, Class<R> type,
+            Function<Collection<ID>, Map<ID, R>> dbFallback, Long time, TimeUnit unit) {
+        Map<ID, R> result = new LinkedHashMap<>(ids.size());
+        if (ids.isEmpty()) {
+            return result;
+        }
+        // 1.先查本地缓存
+        List<ID> remoteIds = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            Object local = getLocal(keyPrefix + id);
+            if (local == null) {
+                remoteIds.add(id);
+            } else if (local != NULL_VALUE) {
+                result.put(id, type.cast(local));
+            }
+        }
+        // 2.一次MGET查询剩余的key
+        List<ID> missIds = new ArrayList<>();
+        if (!remoteIds.isEmpty()) {
+            List<String> keys = remoteIds.stream().map(id -> keyPrefix + id).collect(Collectors.toList());
+            List<byte[]> values = bytesRedisTemplate.opsForValue().multiGet(keys);
+            for (int i = 0; i < remoteIds.size(); i++) {
+                byte[] bytes = values == null ? null : values.get(i);
+                if (bytes == null) {
+                    // 未命中
+                    missIds.add(remoteIds.get(i));
+                } else if (bytes.length > 0) {
+                    R r = codec.decode(bytes, type);
+                    putLocal(keys.get(i), r);
+                    result.put(remoteIds.get(i), r);
+                } else {
+                    // 命中空值
+                    putLocal(keys.get(i), NULL_VALUE);
+                }
+            }
+        }
+        if (missIds.isEmpty()) {
+            return sortByIds(ids, result);
+        }
+        // 3.未命中的id一次性查询数据库
+        Map<ID, R> loaded = dbFallback.apply(missIds);
+        // 4.通过管道批量写回，数据库中不存在的写入空值
+        bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : missIds) {
+                byte[] key = (keyPrefix + id).getBytes(StandardCharsets.UTF_8);
+                R r = loaded.get(id);
+                if (r == null) {
+                    connection.set(key, NULL_BYTES, Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES), SetOption.upsert());
+                } else {
+                    connection.set(key, codec.encode(r),
+                            Expiration.milliseconds(withJitter(time, unit)), SetOption.upsert());
+                }
+            }
+            return null;
+        });
+        for (ID id : missIds) {
+            R r = loaded.get(id);
+            putLocal(keyPrefix + id, r == null ? NULL_VALUE : r);
+            if (r != null) {
+                result.put(id, r);
+            }
+        }
+        return sortByIds(ids, result);
+    }
+
+    /**
+     * 预热：通过管道批量写入缓存，数据格式与对应策略的查询方法一致，过期时间随机浮动
+     * @param keyPrefix key前缀
+     * @param values id -> 数据
+     * @param strategy 读取这些缓存时使用的策略
+     * @param loadMillis 平均每条数据的加载耗时，概率提前过期策略下作为重建耗时delta
+     * @param time 过期时间，逻辑过期策略下为逻辑过期时间
+     * @param unit 时间单位
+     */
+    public <R, ID> void warmUp(String keyPrefix, Map<ID, R> values, CacheStrategy strategy, long loadMillis,
+                               Long time, TimeUnit unit) {
+        // 批量加载时每条数据的耗时远小于单独重建，delta不低于配置的估计值，否则预热的key永远不会提前刷新
+        long delta = Math.max(loadMillis, xfetchWarmUpDelta);
+        bytesRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<ID, R> entry : values.entrySet()) {
+                byte[] key = (keyPrefix + entry.getKey()).getBytes(StandardCharsets.UTF_8);
+                long ttlMillis = withJitter(time, unit);
+                RedisData redisData = new RedisData();
+                redisData.setData(entry.getValue());
+                redisData.setExpireTime(LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(ttlMillis)));
+                switch (strategy) {
+                    case LOGICAL_EXPIRE:
+                        // 逻辑过期的key在Redis中永不过期
+                        connection.set(key, codec.encodeWithExpire(redisData));
+                        break;
+                    case PROBABILISTIC_EXPIRE:
+                        redisData.setDelta(delta);
+                        connection.set(key, codec.encodeWithExpire(redisData),
+                                Expiration.milliseconds(ttlMillis), SetOption.upsert());
+                        break;
+                    default:
+                        connection.set(key, codec.encode(entry.getValue()),
+                                Expiration.milliseconds(ttlMillis), SetOption.upsert());
+                }
+            }
+            return null;
+        });
+    }
+
+    private <R, ID> Map<ID, R> sortByIds(Collection<ID> ids, Map<ID, R> values) {
+        Map<ID, R> sorted = new LinkedHashMap<>(values.size());
+        for (ID id : ids) {
+            R r = values.get(id);
+            if (r != null) {
+                sorted.put(id, r);
+            }
+        }
+        return sorted;
+    }
+
     /**
      * 使用逻辑过期解决缓存击穿问题
      * @param keyPrefix 缓存key前缀
@@ -98,16 +403,31 @@ public class CacheClient {
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
         // 1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
-        // 2.判断是否存在,不存在直接返回null
-        if (StrUtil.isBlank(json)) {
-            // 3.不存在，直接返回null,说明这个key没有预热
+        byte[] bytes = getBytes(key);
+        // 2.判断是否存在
+        if (bytes == null) {
+            // 3.不存在，说明这个key没有预热，合并并发的加载请求后查询数据库并写入逻辑过期缓存
+            Object value = singleFlight(key, () -> loadWithMutex(key,
+                    () -> readCacheWithExpire(key, type),
+                    () -> {
+                        R r = dbFallback.apply(id);
+                        if (r == null) {
+                            bytesRedisTemplate.opsForValue().set(key, NULL_BYTES, CACHE_NULL_TTL, TimeUnit.MINUTES);
+                            return NULL_VALUE;
+                        }
+                        this.setWithLogicalExpire(key, r, time, unit);
+                        return r;
+                    },
+                    () -> dbFallback.apply(id)));
+            return value == NULL_VALUE ? null : type.cast(value);
+        }
+        // 命中的是空值
+        if (bytes.length == 0) {
             return null;
         }
-        // 4.命中缓存,需要先把json反序列化为对象,包含过期时间和实际数据
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        // 将数据转换为指定的类型
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        // 4.命中缓存,解码出过期时间和实际数据,data已经是指定的类型
+        RedisData redisData = codec.decodeWithExpire(bytes, type);
+        R r = type.cast(redisData.getData());
         // 获取逻辑过期时间
         LocalDateTime expireTime = redisData.getExpireTime();
         // 5.判断缓存是否过期
@@ -117,81 +437,314 @@ public class CacheClient {
         }
         // 5.2.已过期，需要进行缓存重建
         // 6.缓存重建
-        // 6.1.获取互斥锁,避免多个线程同时重建
-        String lockKey = LOCK_SHOP_KEY + id;
+        // 6.1.本节点已有该key的重建任务时不再竞争锁
+        if (cacheRebuildExecutor.isRebuilding(key)) {
+            return r;
+        }
+        // 获取互斥锁,避免多个线程同时重建
+        String lockKey = LOCK_CACHE_KEY + key;
         boolean isLock = tryLock(lockKey);
         // 6.2.判断是否获取锁成功
         if (isLock){
-            // 6.3.成功获取锁,开启独立线程执行缓存重建,避免用户等待
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+            // 6.3.成功获取锁,提交到重建线程池执行,避免用户等待,任务的异常由线程池记录
+            boolean accepted = cacheRebuildExecutor.submit(key, () -> {
                 try {
                     // 查询数据库获取最新数据
                     R newR = dbFallback.apply(id);
                     // 将新数据写入Redis,并设置逻辑过期时间
                     this.setWithLogicalExpire(key, newR, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }finally {
+                } finally {
                     // 释放互斥锁
                     unlock(lockKey);
                 }
             });
+            if (!accepted) {
+                // 队列已满或已有重建任务，释放锁，由下一次请求重试
+                unlock(lockKey);
+            }
         }
         // 6.4.返回过期的商铺信息,实现缓存击穿的"逻辑过期"策略
         return r;
     }
 
-    public <R, ID> R queryWithMutex(
+    /**
+     * 概率提前过期(XFetch)：缓存中同时保存数据和重建耗时delta，
+     * 在 now - delta * beta * ln(random) >= 过期时间 时提前异步刷新，越接近过期、重建越慢，提前刷新的概率越大，
+     * 同时写入的大量key会在过期前被分散地刷新，不会在同一时刻一起回源数据库
+     * @param keyPrefix 缓存key前缀
+     * @param id 查询的id
+     * @param type 返回值类型
+     * @param dbFallback 查询数据库的函数
+     * @param time 过期时间
+     * @param unit 时间单位
+     * @return 泛型R
+     */
+    public <R, ID> R queryWithProbabilisticExpire(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
-        // 构造Redis键
         String key = keyPrefix + id;
-        // 1.从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        // 2.判断是否存在
-        if (StrUtil.isNotBlank(shopJson)) {
-            // 3.存在，直接返回,将JSON转为Java对象
-            return JSONUtil.toBean(shopJson, type);
+        // 1.从redis查询缓存
+        byte[] bytes = getBytes(key);
+        // 2.未命中，合并并发的加载请求后查询数据库并写入缓存，避免同时回源
+        if (bytes == null) {
+            Object value = singleFlight(key, () -> loadWithMutex(key,
+                    () -> readCacheWithExpire(key, type),
+                    () -> {
+                        R loaded = rebuildWithDelta(key, id, dbFallback, time, unit);
+                        return loaded == null ? NULL_VALUE : loaded;
+                    },
+                    () -> dbFallback.apply(id)));
+            return value == NULL_VALUE ? null : type.cast(value);
         }
-        // 判断命中的是否是空值,用于解决缓存穿透问题
-        if (shopJson != null) {
-            // 返回一个错误信息,说明数据库中也不存在这条数据
+        // 命中的是空值
+        if (bytes.length == 0) {
             return null;
         }
+        // 3.命中，解码数据、过期时间和重建耗时
+        RedisData redisData = codec.decodeWithExpire(bytes, type);
+        R r = type.cast(redisData.getData());
+        long expireMillis = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long delta = redisData.getDelta() == null ? 0 : redisData.getDelta();
+        // 4.按概率决定是否提前刷新
+        double gap = -delta * xfetchBeta * Math.log(ThreadLocalRandom.current().nextDouble());
+        if (System.currentTimeMillis() + gap < expireMillis) {
+            return r;
+        }
+        // 5.提前刷新，获取锁后提交到重建线程池，当前请求直接返回旧数据
+        if (cacheRebuildExecutor.isRebuilding(key)) {
+            return r;
+        }
+        String lockKey = LOCK_CACHE_KEY + key;
+        if (tryLock(lockKey)) {
+            boolean accepted = cacheRebuildExecutor.submit(key, () -> {
+                try {
+                    rebuildWithDelta(key, id, dbFallback, time, unit);
+                } finally {
+                    unlock(lockKey);
+                }
+            });
+            if (!accepted) {
+                unlock(lockKey);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * 查询数据库并记录耗时，连同过期时间一起写入Redis，Redis中key的真实过期时间与逻辑过期时间一致
+     */
+    private <R, ID> R rebuildWithDelta(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        long begin = System.currentTimeMillis();
+        R r = dbFallback.apply(id);
+        long delta = System.currentTimeMillis() - begin;
+        if (r == null) {
+            // 将空值写入redis,避免缓存穿透
+            bytesRedisTemplate.opsForValue().set(key, NULL_BYTES, CACHE_NULL_TTL, TimeUnit.MINUTES);
+            return null;
+        }
+        long ttlMillis = withJitter(time, unit);
+        RedisData redisData = new RedisData();
+        redisData.setData(r);
+        redisData.setDelta(delta);
+        redisData.setExpireTime(LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(ttlMillis)));
+        bytesRedisTemplate.opsForValue().set(key, codec.encodeWithExpire(redisData), ttlMillis, TimeUnit.MILLISECONDS);
+        return r;
+    }
+
+    /**
+     * 在过期时间上增加 [0, ttlJitter) 比例的随机浮动
+     * @return 过期时间(毫秒)
+     */
+    private long withJitter(Long time, TimeUnit unit) {
+        long ttlMillis = unit.toMillis(time);
+        if (ttlJitter <= 0) {
+            return ttlMillis;
+        }
+        return ttlMillis + (long) (ttlMillis * ttlJitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * 使用互斥锁解决缓存击穿问题
+     * 同一节点内并发的未命中请求合并为一次加载(single-flight)，只有加载者去竞争分布式锁，
+     * 竞争失败时订阅重建完成的消息，而不是休眠轮询
+     */
+    public <R, ID> R queryWithMutex(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 构造Redis键
+        String key = keyPrefix + id;
+        // 1.查询缓存,命中直接返回
+        Object cached = readCache(key, type);
+        if (cached != null) {
+            return cached == NULL_VALUE ? null : type.cast(cached);
+        }
+        // 2.未命中，合并本节点的并发加载，跨节点通过分布式锁只查询一次数据库
+        Object value = singleFlight(key, () -> loadWithMutex(key,
+                () -> readCache(key, type),
+                () -> loadFromDb(key, id, dbFallback, time, unit),
+                () -> dbFallback.apply(id)));
+        return value == NULL_VALUE ? null : type.cast(value);
+    }
 
-        // 4.实现缓存重建
-        // 4.1.获取互斥锁,使用分布式锁解决缓存击穿问题
-        String lockKey = LOCK_SHOP_KEY + id;
-        R r = null;
+    /**
+     * 同一个key在本节点只有一个线程负责加载，其它线程等待它的结果
+     * @param key 缓存key
+     * @param loader 加载函数，返回NULL_VALUE表示数据不存在
+     * @return 加载结果
+     */
+    private Object singleFlight(String key, Supplier<Object> loader) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlightLoads.putIfAbsent(key, flight);
+        if (existing != null) {
+            return awaitFlight(existing);
+        }
         try {
-            // 尝试获取锁
-            boolean isLock = tryLock(lockKey);
-            // 4.2.判断是否获取成功
-            if (!isLock) {
-                // 4.3.获取锁失败，休眠50毫秒后重试,避免频繁请求数据库
-                Thread.sleep(50);
-                return queryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
+            Object value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, flight);
+            rebuildSignals.remove(key);
+        }
+    }
+
+    /**
+     * 跨节点通过分布式锁保证只有一个节点查询数据库，其它节点等待重建完成的消息后再读缓存
+     * 等待超过锁的有效期仍未读到缓存时直接查询数据库，不再无限重试
+     * @param key 缓存key
+     * @param cacheReader 读取缓存，未命中返回null，命中空值返回NULL_VALUE
+     * @param cacheLoader 查询数据库并写入缓存，数据不存在时返回NULL_VALUE
+     * @param dbLoader 等待超时后只查询数据库，不写缓存
+     */
+    private Object loadWithMutex(
+            String key, Supplier<Object> cacheReader, Supplier<Object> cacheLoader, Supplier<?> dbLoader) {
+        String lockKey = LOCK_CACHE_KEY + key;
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(LOCK_SHOP_TTL);
+        while (System.currentTimeMillis() < deadline) {
+            // 3.获取互斥锁,使用分布式锁解决缓存击穿问题
+            if (tryLock(lockKey)) {
+                try {
+                    // 3.1.获取锁成功，再次检查缓存，其它节点可能刚刚完成重建
+                    Object cached = cacheReader.get();
+                    if (cached != null) {
+                        return cached;
+                    }
+                    // 3.2.根据id查询数据库并写入缓存
+                    Object value = cacheLoader.get();
+                    // 3.3.通知其它节点重建完成
+                    stringRedisTemplate.convertAndSend(CACHE_REBUILT_CHANNEL, key);
+                    return value;
+                } finally {
+                    // 释放互斥锁
+                    unlock(lockKey);
+                }
+            }
+            // 4.获取锁失败，等待重建完成的消息后再查缓存
+            CompletableFuture<Void> signal = rebuildSignals.computeIfAbsent(key, k -> new CompletableFuture<>());
+            // 注册后再查一次，避免错过注册前发出的消息
+            Object cached = cacheReader.get();
+            if (cached != null) {
+                return cached;
             }
-            // 4.4.获取锁成功，根据id查询数据库
-            r = dbFallback.apply(id);
-            // 5.不存在，返回错误
-            if (r == null) {
-                // 将空值写入redis,避免缓存穿透,设置较短的过期时间
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                // 返回错误信息
-                return null;
+            try {
+                signal.get(REBUILD_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // 超时后重新尝试获取锁，持有锁的节点宕机时锁会自动过期
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
             }
-            // 6.存在，写入redis缓存,并设置过期时间
-            this.set(key, r, time, unit);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }finally {
-            // 7.释放互斥锁
-            unlock(lockKey);
-        }
-        // 8.返回数据库查询结果
+            cached = cacheReader.get();
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // 5.等待超时，直接查询数据库，避免请求一直阻塞
+        log.warn("等待缓存重建超时, key: {}", key);
+        Object r = dbLoader.get();
+        return r == null ? NULL_VALUE : r;
+    }
+
+    private <R, ID> Object loadFromDb(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        R r = dbFallback.apply(id);
+        if (r == null) {
+            // 将空值写入redis,避免缓存穿透,设置较短的过期时间
+            bytesRedisTemplate.opsForValue().set(key, NULL_BYTES, CACHE_NULL_TTL, TimeUnit.MINUTES);
+            putLocal(key, NULL_VALUE);
+            return NULL_VALUE;
+        }
+        // 存在，写入redis缓存,并设置随机浮动的过期时间
+        this.set(key, r, withJitter(time, unit), TimeUnit.MILLISECONDS);
         return r;
     }
 
+    /**
+     * 依次查询本地缓存和Redis
+     * @return 未命中返回null，命中空值返回NULL_VALUE
+     */
+    private <R> Object readCache(String key, Class<R> type) {
+        Object local = getLocal(key);
+        if (local != null) {
+            return local;
+        }
+        byte[] bytes = getBytes(key);
+        if (bytes == null) {
+            return null;
+        }
+        // 命中的是空值,说明数据库中也不存在这条数据
+        Object value = bytes.length == 0 ? NULL_VALUE : codec.decode(bytes, type);
+        putLocal(key, value);
+        return value;
+    }
+
+    /**
+     * 查询带过期时间的缓存，逻辑过期的数据也视为命中，由调用方决定是否刷新
+     * @return 未命中返回null，命中空值返回NULL_VALUE
+     */
+    private <R> Object readCacheWithExpire(String key, Class<R> type) {
+        byte[] bytes = bytesRedisTemplate.opsForValue().get(key);
+        if (bytes == null) {
+            return null;
+        }
+        return bytes.length == 0 ? NULL_VALUE : codec.decodeWithExpire(bytes, type).getData();
+    }
+
+    private Object awaitFlight(CompletableFuture<Object> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * 从Redis读取缓存，热点key读取本节点的短期副本
+     */
+    private byte[] getBytes(String key) {
+        return hotKeyDetector.get(key, () -> bytesRedisTemplate.opsForValue().get(key));
+    }
+
+    private void invalidateLocal(String key) {
+        if (localCache != null) {
+            localCache.invalidate(key);
+        }
+        hotKeyDetector.invalidate(key);
+    }
+
+    private Object getLocal(String key) {
+        return localCache == null ? null : localCache.getIfPresent(key);
+    }
+
+    private void putLocal(String key, Object value) {
+        if (localCache != null && value != null) {
+            localCache.put(key, value);
+        }
+    }
+
     /**
      * 尝试获取分布式锁
      * @param key 锁的key
@@ -0,0 +1,30 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存数据的编解码方式，CacheClient按 hmdp.cache.codec 的配置选择实现
+ * 空值缓存统一用长度为0的字节数组表示，不经过编解码
+ */
+public interface CacheCodec {
+
+    /**
+     * @return 编码名称，对应 hmdp.cache.codec 的配置
+     */
+    String name();
+
+    byte[] encode(Object value);
+
+    <R> R decode(byte[] bytes, Class<R> type);
+
+    /**
+     * 编码带逻辑过期时间的数据
+     * @param redisData 过期时间、重建耗时和实际数据
+     */
+    byte[] encodeWithExpire(RedisData redisData);
+
+    /**
+     * 解码带逻辑过期时间的数据
+     * @param type 实际数据的类型
+     * @return data已经转换为type类型的RedisData
+     */
+    <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type);
+}
@@ -0,0 +1,124 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存重建线程池
+ * 有界队列保证大量key同时过期时内存可控，同一个key同时只有一个重建任务，队列满时拒绝并由调用方返回旧数据
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    private final int queueCapacity;
+
+    /**
+     * 正在排队或执行重建的key
+     */
+    private final Set<String> inFlightKeys = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public CacheRebuildExecutor(@Value("${hmdp.cache.rebuild.threads:10}") int threads,
+                                @Value("${hmdp.cache.rebuild.queue-capacity:100}") int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("cache-rebuild-", false),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 判断key是否正在重建
+     * @param key 缓存key
+     * @return true代表已有重建任务
+     */
+    public boolean isRebuilding(String key) {
+        return inFlightKeys.contains(key);
+    }
+
+    /**
+     * 提交重建任务
+     * @param key 缓存key
+     * @param task 重建任务
+     * @return false代表该key已有重建任务或队列已满，任务未被接收
+     */
+    public boolean submit(String key, Runnable task) {
+        // 1.同一个key只保留一个重建任务
+        if (!inFlightKeys.add(key)) {
+            deduplicated.incrementAndGet();
+            return false;
+        }
+        // 2.提交到有界队列，队列满时拒绝
+        try {
+            executor.execute(() -> rebuild(key, task));
+        } catch (RejectedExecutionException e) {
+            inFlightKeys.remove(key);
+            rejected.incrementAndGet();
+            log.warn("缓存重建队列已满, key: {}", key);
+            return false;
+        }
+        submitted.incrementAndGet();
+        return true;
+    }
+
+    private void rebuild(String key, Runnable task) {
+        long begin = System.nanoTime();
+        try {
+            task.run();
+            succeeded.incrementAndGet();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("缓存重建失败, key: {}", key, e);
+        } finally {
+            long cost = System.nanoTime() - begin;
+            totalNanos.addAndGet(cost);
+            maxNanos.accumulateAndGet(cost, Math::max);
+            inFlightKeys.remove(key);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long completed = succeeded.get() + failed.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("activeThreads", executor.getActiveCount());
+        stats.put("queueDepth", executor.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("inFlightKeys", inFlightKeys.size());
+        stats.put("submitted", submitted.get());
+        stats.put("deduplicated", deduplicated.get());
+        stats.put("rejected", rejected.get());
+        stats.put("succeeded", succeeded.get());
+        stats.put("failed", failed.get());
+        stats.put("avgLatencyMillis", completed == 0 ? 0D : totalNanos.get() / 1e6 / completed);
+        stats.put("maxLatencyMillis", maxNanos.get() / 1e6);
+        return stats;
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdown();
+    }
+}
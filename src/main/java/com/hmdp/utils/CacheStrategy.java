@@ -0,0 +1,23 @@
+package com.hmdp.utils;
+
+/**
+ * {@link Cached} 使用的缓存策略，对应CacheClient的各个查询方法
+ */
+public enum CacheStrategy {
+    /**
+     * 缓存空值解决缓存穿透 {@link CacheClient#queryWithPassThrough}
+     */
+    PASS_THROUGH,
+    /**
+     * 互斥锁解决缓存击穿 {@link CacheClient#queryWithMutex}
+     */
+    MUTEX,
+    /**
+     * 逻辑过期解决缓存击穿 {@link CacheClient#queryWithLogicalExpire}
+     */
+    LOGICAL_EXPIRE,
+    /**
+     * 概率提前过期 {@link CacheClient#queryWithProbabilisticExpire}
+     */
+    PROBABILISTIC_EXPIRE
+}
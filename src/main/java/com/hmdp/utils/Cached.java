@@ -0,0 +1,39 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存方法的返回值，缓存key为 prefix + key表达式的值
+ * 返回值按方法声明的返回类型解码，泛型集合中的元素不会还原为具体类型，需要缓存列表时返回数组
+ * 逻辑过期和概率提前过期策略会在重建线程中再次调用方法，此时调用者已经返回，
+ * 方法只能依赖参数，不能依赖事务、UserHolder或请求上下文，带有@Transactional的方法不能使用这两种策略
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Cached {
+
+    /**
+     * 缓存key前缀，例如 RedisConstants.CACHE_SHOP_KEY
+     */
+    String prefix();
+
+    /**
+     * 缓存key的SpEL表达式，可以使用参数名或#p0，默认取第一个参数
+     */
+    String key() default "#p0";
+
+    /**
+     * 过期时间，逻辑过期策略下为逻辑过期时间
+     */
+    long ttl();
+
+    TimeUnit unit() default TimeUnit.MINUTES;
+
+    CacheStrategy strategy() default CacheStrategy.PASS_THROUGH;
+}
@@ -0,0 +1,134 @@
+package com.hmdp.utils;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.BridgeMethodResolver;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.Ordered;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.Order;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * {@link Cached} 和 {@link CachedEvict} 的切面
+ * 优先级比事务(LOWEST_PRECEDENCE)高一级，删除缓存发生在事务提交之后
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class CachedAspect {
+
+    private final CacheClient cacheClient;
+
+    private final ExpressionParser parser = new SpelExpressionParser();
+
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    /**
+     * SpEL表达式 -> 解析结果
+     */
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    /**
+     * 方法 -> 是否为事务方法
+     */
+    private final Map<Method, Boolean> checkedMethods = new ConcurrentHashMap<>();
+
+    public CachedAspect(CacheClient cacheClient) {
+        this.cacheClient = cacheClient;
+    }
+
+    @Around("@annotation(cached)")
+    public Object cached(ProceedingJoinPoint joinPoint, Cached cached) {
+        Method method = specificMethod(joinPoint);
+        String id = evaluateKey(cached.key(), method, joinPoint.getArgs());
+        checkAsyncRebuild(method, cached.strategy());
+        @SuppressWarnings("unchecked")
+        Class<Object> type = (Class<Object>) method.getReturnType();
+        // 查询数据库即执行原方法，异步重建时只依赖参数
+        Function<String, Object> dbFallback = ignored -> proceed(joinPoint);
+        switch (cached.strategy()) {
+            case MUTEX:
+                return cacheClient.queryWithMutex(cached.prefix(), id, type, dbFallback, cached.ttl(), cached.unit());
+            case LOGICAL_EXPIRE:
+                return cacheClient.queryWithLogicalExpire(
+                        cached.prefix(), id, type, dbFallback, cached.ttl(), cached.unit());
+            case PROBABILISTIC_EXPIRE:
+                return cacheClient.queryWithProbabilisticExpire(
+                        cached.prefix(), id, type, dbFallback, cached.ttl(), cached.unit());
+            default:
+                return cacheClient.queryWithPassThrough(
+                        cached.prefix(), id, type, dbFallback, cached.ttl(), cached.unit());
+        }
+    }
+
+    @Around("@annotation(com.hmdp.utils.CachedEvict) || @annotation(com.hmdp.utils.CachedEvict.List)")
+    public Object evict(ProceedingJoinPoint joinPoint) throws Throwable {
+        Object result = joinPoint.proceed();
+        // 方法执行成功后再删除缓存
+        Method method = specificMethod(joinPoint);
+        Set<CachedEvict> evicts = AnnotatedElementUtils.findMergedRepeatableAnnotations(method, CachedEvict.class);
+        for (CachedEvict evict : evicts) {
+            cacheClient.delete(evict.prefix() + evaluateKey(evict.key(), method, joinPoint.getArgs()));
+        }
+        return result;
+    }
+
+    /**
+     * 逻辑过期和概率提前过期在重建线程中调用原方法，事务和调用线程的上下文都已不存在，
+     * 带有@Transactional的方法直接拒绝，避免重建时静默地在事务之外执行
+     */
+    private void checkAsyncRebuild(Method method, CacheStrategy strategy) {
+        if (strategy != CacheStrategy.LOGICAL_EXPIRE && strategy != CacheStrategy.PROBABILISTIC_EXPIRE) {
+            return;
+        }
+        boolean transactional = checkedMethods.computeIfAbsent(method,
+                m -> AnnotatedElementUtils.hasAnnotation(m, Transactional.class)
+                        || AnnotatedElementUtils.hasAnnotation(m.getDeclaringClass(), Transactional.class));
+        if (transactional) {
+            throw new IllegalStateException("@Cached的" + strategy + "策略会在重建线程中调用方法，不能用于事务方法: " + method);
+        }
+    }
+
+    /**
+     * 通过接口调用时签名中的可能是接口方法，取实现类上的方法，才能拿到具体的返回类型
+     */
+    private static Method specificMethod(ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Method specific = AopUtils.getMostSpecificMethod(method, AopUtils.getTargetClass(joinPoint.getTarget()));
+        return BridgeMethodResolver.findBridgedMethod(specific);
+    }
+
+    private String evaluateKey(String key, Method method, Object[] args) {
+        Expression expression = expressions.computeIfAbsent(key, parser::parseExpression);
+        MethodBasedEvaluationContext context =
+                new MethodBasedEvaluationContext(null, method, args, parameterNameDiscoverer);
+        return String.valueOf(expression.getValue(context));
+    }
+
+    private static Object proceed(ProceedingJoinPoint joinPoint) {
+        try {
+            // 传入参数，逻辑过期策略在重建线程中执行时也能重新调用原方法
+            return joinPoint.proceed(joinPoint.getArgs());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
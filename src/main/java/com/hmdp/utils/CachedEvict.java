@@ -0,0 +1,35 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法执行成功后删除缓存，事务方法在事务提交后才删除
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Repeatable(CachedEvict.List.class)
+public @interface CachedEvict {
+
+    /**
+     * 缓存key前缀
+     */
+    String prefix();
+
+    /**
+     * 缓存key的SpEL表达式，可以使用参数名或#p0，默认取第一个参数
+     */
+    String key() default "#p0";
+
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    @Documented
+    @interface List {
+        CachedEvict[] value();
+    }
+}
@@ -0,0 +1,79 @@
+package com.hmdp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch：用固定大小的计数矩阵估算key的出现次数，只会高估不会低估
+ * 误差上限约为 总次数 * e / width，超过上限的概率约为 e^(-depth)
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final AtomicLongArray counters;
+
+    public CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("depth和width必须大于0");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new AtomicLongArray(depth * width);
+    }
+
+    /**
+     * 增加key的计数
+     * @return 增加后的估算次数
+     */
+    public long add(String key, long count) {
+        long[] hashes = hash(key);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters.addAndGet(index(hashes, i), count));
+        }
+        return min;
+    }
+
+    /**
+     * 估算key的次数，取各行计数的最小值
+     */
+    public long estimate(String key) {
+        long[] hashes = hash(key);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters.get(index(hashes, i)));
+        }
+        return min;
+    }
+
+    public void clear() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    /**
+     * 第i行的位置，用两个哈希值组合出depth个哈希函数 h1 + i * h2
+     */
+    private int index(long[] hashes, int i) {
+        long combined = hashes[0] + i * hashes[1];
+        return i * width + (int) Math.floorMod(combined, (long) width);
+    }
+
+    private static long[] hash(String key) {
+        long h1 = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h1 ^= b;
+            h1 *= 0x100000001b3L;
+        }
+        // 第二个哈希值用murmur3的混淆函数从第一个派生，保证为奇数
+        long h2 = h1;
+        h2 ^= h2 >>> 33;
+        h2 *= 0xff51afd7ed558ccdL;
+        h2 ^= h2 >>> 33;
+        h2 *= 0xc4ceb9fe1a85ec53L;
+        h2 ^= h2 >>> 33;
+        return new long[]{h1, h2 | 1};
+    }
+}
@@ -0,0 +1,193 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 热点key探测：对Redis读请求按比例采样，用多个Count-Min Sketch组成滑动窗口统计访问次数，
+ * 窗口内估算次数超过阈值的key判定为热点，读取时复制到短过期时间的本地缓存，避免单个分片被打满
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    private final boolean enabled;
+    private final double sampleRate;
+    private final long threshold;
+    private final int topK;
+
+    /**
+     * 滑动窗口的各个时间片，current指向正在写入的时间片
+     */
+    private final CountMinSketch[] slots;
+    private volatile int current;
+
+    /**
+     * 热点key -> 最近一次估算的窗口内访问次数
+     */
+    private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    /**
+     * 热点key的本地副本，key为 Redis key
+     */
+    private final Cache<String, Object> localCache;
+
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong localMisses = new AtomicLong();
+
+    private final ScheduledExecutorService rotator =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("hot-key-rotator-", true));
+
+    public HotKeyDetector(@Value("${hmdp.hot-key.enabled:true}") boolean enabled,
+                          @Value("${hmdp.hot-key.sample-rate:0.1}") double sampleRate,
+                          @Value("${hmdp.hot-key.window:10s}") Duration window,
+                          @Value("${hmdp.hot-key.window-slots:10}") int windowSlots,
+                          @Value("${hmdp.hot-key.threshold:1000}") long threshold,
+                          @Value("${hmdp.hot-key.top-k:20}") int topK,
+                          @Value("${hmdp.hot-key.sketch-depth:4}") int sketchDepth,
+                          @Value("${hmdp.hot-key.sketch-width:2048}") int sketchWidth,
+                          @Value("${hmdp.hot-key.local.maximum-size:1000}") long localMaximumSize,
+                          @Value("${hmdp.hot-key.local.ttl:2s}") Duration localTtl) {
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.threshold = threshold;
+        this.topK = topK;
+        this.slots = new CountMinSketch[windowSlots];
+        for (int i = 0; i < windowSlots; i++) {
+            slots[i] = new CountMinSketch(sketchDepth, sketchWidth);
+        }
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localTtl)
+                .build();
+        if (enabled) {
+            long slotMillis = window.toMillis() / windowSlots;
+            rotator.scheduleAtFixedRate(this::rotate, slotMillis, slotMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        rotator.shutdownNow();
+    }
+
+    /**
+     * 读取整个key的值，热点key优先读本地副本，loader返回null时不缓存
+     * @param key Redis key
+     * @param loader 从Redis读取的函数
+     */
+    public <T> T get(String key, Supplier<T> loader) {
+        return record(key) ? load(key, loader) : loader.get();
+    }
+
+    /**
+     * 记录一次访问
+     * @return key当前是否为热点
+     */
+    public boolean record(String key) {
+        if (!enabled) {
+            return false;
+        }
+        // 1.未被采样，只判断是否为热点
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return hotKeys.containsKey(key);
+        }
+        // 2.计入当前时间片，再按采样率估算整个窗口内的访问次数
+        slots[current].add(key, 1);
+        long estimate = estimate(key);
+        if (estimate >= threshold) {
+            if (hotKeys.put(key, estimate) == null) {
+                log.info("发现热点key: {}, 窗口内访问次数约: {}", key, estimate);
+            }
+            return true;
+        }
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * 删除本节点的本地副本，由CacheClient在写操作和收到失效广播时调用
+     */
+    public void invalidate(String key) {
+        localCache.invalidate(key);
+    }
+
+    /**
+     * 访问次数最多的热点key
+     */
+    public List<Map.Entry<String, Long>> topK() {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(hotKeys.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return entries.size() > topK ? entries.subList(0, topK) : entries;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("sampleRate", sampleRate);
+        stats.put("threshold", threshold);
+        stats.put("hotKeyCount", hotKeys.size());
+        stats.put("localSize", localCache.estimatedSize());
+        stats.put("localHits", localHits.get());
+        stats.put("localMisses", localMisses.get());
+        Map<String, Long> top = new LinkedHashMap<>();
+        topK().forEach(e -> top.put(e.getKey(), e.getValue()));
+        stats.put("topK", top);
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T load(String key, Supplier<T> loader) {
+        Object value = localCache.getIfPresent(key);
+        if (value != null) {
+            localHits.incrementAndGet();
+            return (T) value;
+        }
+        localMisses.incrementAndGet();
+        T loaded = loader.get();
+        if (loaded != null) {
+            localCache.put(key, loaded);
+        }
+        return loaded;
+    }
+
+    private long estimate(String key) {
+        long sum = 0;
+        for (CountMinSketch slot : slots) {
+            sum += slot.estimate(key);
+        }
+        return (long) (sum / sampleRate);
+    }
+
+    /**
+     * 窗口滑动：清空最旧的时间片作为新的当前时间片，并移除不再达到阈值的热点key
+     */
+    private void rotate() {
+        try {
+            int next = (current + 1) % slots.length;
+            slots[next].clear();
+            current = next;
+            hotKeys.replaceAll((key, count) -> estimate(key));
+            hotKeys.values().removeIf(count -> count < threshold);
+        } catch (Exception e) {
+            log.error("热点key窗口滑动失败", e);
+        }
+    }
+}
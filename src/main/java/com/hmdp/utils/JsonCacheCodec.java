@@ -0,0 +1,43 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSON;
+import cn.hutool.json.JSONUtil;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hutool JSON编码，与原有缓存中的字符串格式完全一致
+ */
+@Component
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        // 按实际内容解析为JSONObject或JSONArray，数组类型的缓存也能还原元素类型
+        return JSONUtil.parse(new String(bytes, StandardCharsets.UTF_8)).toBean(type);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(RedisData redisData) {
+        return encode(redisData);
+    }
+
+    @Override
+    public <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type) {
+        // 先解析外层得到过期时间，data此时是JSONObject或JSONArray，再转换为实际类型
+        RedisData redisData = decode(bytes, RedisData.class);
+        redisData.setData(((JSON) redisData.getData()).toBean(type));
+        return redisData;
+    }
+}
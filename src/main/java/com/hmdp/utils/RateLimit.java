@@ -0,0 +1,60 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 接口限流，令牌桶容量为capacity，每period秒补满一次，可以按多个维度同时限流
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Repeatable(RateLimit.List.class)
+public @interface RateLimit {
+
+    /**
+     * 限流名称，名称相同的接口共用令牌桶，默认为 类名.方法名
+     */
+    String name() default "";
+
+    /**
+     * 限流维度
+     */
+    Type type();
+
+    /**
+     * 令牌桶容量，即允许的突发请求数
+     */
+    int capacity();
+
+    /**
+     * 补满令牌桶的时间(秒)
+     */
+    int period() default 1;
+
+    enum Type {
+        /**
+         * 按请求参数phone限流
+         */
+        PHONE,
+        /**
+         * 按登录用户限流，未登录时不限流
+         */
+        USER,
+        /**
+         * 按客户端IP限流
+         */
+        IP
+    }
+
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    @Documented
+    @interface List {
+        RateLimit[] value();
+    }
+}
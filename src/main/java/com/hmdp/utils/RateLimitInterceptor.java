@@ -0,0 +1,79 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 {@link RateLimit} 限流的拦截器，在token刷新拦截器之后执行，可以按登录用户限流
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private RateLimiter rateLimiter;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 1.只处理有限流注解的接口，异步请求完成后的ASYNC再次分派不重复扣减令牌
+        if (request.getDispatcherType() == DispatcherType.ASYNC || !(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        Set<RateLimit> limits = AnnotatedElementUtils.findMergedRepeatableAnnotations(
+                handlerMethod.getMethod(), RateLimit.class);
+        if (limits.isEmpty()) {
+            return true;
+        }
+        // 2.依次检查每个维度，未指定限流名称时为 类名.方法名
+        String defaultName = handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName();
+        for (RateLimit limit : limits) {
+            String name = StrUtil.blankToDefault(limit.name(), defaultName);
+            String value = resolve(limit.type(), request);
+            if (value == null) {
+                continue;
+            }
+            if (!rateLimiter.tryAcquire(name, limit.type() + ":" + value,
+                    limit.capacity(), TimeUnit.SECONDS.toMillis(limit.period()))) {
+                // 3.超过限制，返回429
+                response.setStatus(429);
+                response.setContentType("application/json;charset=UTF-8");
+                response.getOutputStream().write(
+                        JSONUtil.toJsonStr(Result.fail("请求过于频繁，请稍后再试")).getBytes(StandardCharsets.UTF_8));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 取出限流维度的值
+     * @return 取不到时返回null，不限流
+     */
+    private String resolve(RateLimit.Type type, HttpServletRequest request) {
+        switch (type) {
+            case PHONE:
+                return StrUtil.emptyToNull(request.getParameter("phone"));
+            case USER:
+                UserDTO user = UserHolder.getUser();
+                return user == null ? null : user.getId().toString();
+            default:
+                // X-Forwarded-For的第一个地址可以由客户端伪造，不能直接使用
+                // 经过代理时由Tomcat RemoteIpValve按受信任代理列表取最右侧不受信任的地址，见 server.forward-headers-strategy
+                return request.getRemoteAddr();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * 两级令牌桶限流
+ * 1.本地令牌桶：参数与全局相同，单个节点看到的请求只是全部请求的一部分，本地没有令牌时全局也一定没有，直接拒绝，不访问Redis
+ * 2.Redis令牌桶：lua脚本保证多个节点共享同一个令牌桶
+ */
+@Slf4j
+@Component
+public class RateLimiter {
+
+    private final RedisScriptRegistry redisScriptRegistry;
+
+    /**
+     * 本地令牌桶，key与Redis中的key相同
+     */
+    private final Cache<String, TokenBucket> localBuckets;
+
+    /**
+     * 限流名称 -> 通过、本地拒绝、Redis拒绝的次数
+     */
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    public RateLimiter(RedisScriptRegistry redisScriptRegistry,
+                       @Value("${hmdp.rate-limit.local.maximum-size:100000}") long localMaximumSize,
+                       @Value("${hmdp.rate-limit.local.expire-after-access:10m}") Duration localExpire) {
+        this.redisScriptRegistry = redisScriptRegistry;
+        this.localBuckets = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterAccess(localExpire)
+                .build();
+    }
+
+    /**
+     * 尝试获取一个令牌
+     * @param name 限流名称，用于统计
+     * @param key 令牌桶标识，例如 USER:1010
+     * @param capacity 令牌桶容量
+     * @param periodMillis 补满令牌桶的时间
+     * @return 是否允许通过
+     */
+    public boolean tryAcquire(String name, String key, int capacity, long periodMillis) {
+        String bucketKey = RATE_LIMIT_KEY + name + ":" + key;
+        Counters c = counters.computeIfAbsent(name, n -> new Counters());
+        // 1.本地令牌桶没有令牌，直接拒绝
+        long now = System.currentTimeMillis();
+        TokenBucket local = localBuckets.get(bucketKey, k -> new TokenBucket(capacity, now));
+        if (!local.tryAcquire(capacity, periodMillis, now)) {
+            c.localRejected.increment();
+            return false;
+        }
+        // 2.Redis令牌桶
+        try {
+            Long result = redisScriptRegistry.execute("rate_limit", Collections.singletonList(bucketKey),
+                    String.valueOf(capacity), String.valueOf(periodMillis), String.valueOf(now));
+            if (result == null || result == 0) {
+                c.redisRejected.increment();
+                return false;
+            }
+        } catch (Exception e) {
+            // Redis不可用时只依靠本地限流，不影响正常请求
+            log.warn("限流脚本执行失败, key: {}", bucketKey, e);
+        }
+        c.passed.increment();
+        return true;
+    }
+
+    /**
+     * 各限流的统计
+     */
+    public Map<String, Map<String, Long>> stats() {
+        Map<String, Map<String, Long>> result = new TreeMap<>();
+        counters.forEach((name, c) -> {
+            Map<String, Long> map = new LinkedHashMap<>();
+            map.put("passed", c.passed.sum());
+            map.put("localRejected", c.localRejected.sum());
+            map.put("redisRejected", c.redisRejected.sum());
+            result.put(name, map);
+        });
+        return result;
+    }
+
+    private static class Counters {
+        private final LongAdder passed = new LongAdder();
+        private final LongAdder localRejected = new LongAdder();
+        private final LongAdder redisRejected = new LongAdder();
+    }
+}
@@ -5,18 +5,49 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 36000L;
+    public static final String LOGIN_TOKEN_INVALIDATE_CHANNEL = "login:token:invalidate";
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String CACHE_REBUILT_CHANNEL = "cache:rebuilt";
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final String CACHE_USER_INFO_KEY = "cache:user-info:";
+    public static final String CACHE_USER_PHONE_KEY = "cache:user:phone:";
+    public static final Long CACHE_USER_PHONE_TTL = 1440L;
+    public static final String CACHE_VOUCHER_OF_SHOP_KEY = "cache:voucher:shop:";
+    public static final String CACHE_SHOP_TYPE_KEY = "cache:shop-type:";
+    public static final String CACHE_CHANGE_STREAM = "stream.cache.changes";
+    public static final String CACHE_CHANGE_GROUP = "cache-invalidator";
+    public static final String CACHE_CHANGE_DLQ_STREAM = "stream.cache.changes.dlq";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_CACHE_KEY = "lock:";
+
+    public static final String SHOP_BLOOM_KEY = "bloom:shop:";
+    public static final String SHOP_BLOOM_CURRENT_KEY = "bloom:shop:current";
+    public static final String SHOP_BLOOM_SWITCH_CHANNEL = "bloom:shop:switch";
+    public static final String LOCK_SHOP_BLOOM_KEY = "lock:bloom:shop";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_BUCKETS_KEY = "seckill:buckets:";
+    public static final String SECKILL_WINDOW_KEY = "seckill:window:";
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final String SECKILL_ORDER_DLQ_STREAM = "stream.orders.dlq";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_RESTOCK_CHANNEL = "seckill:restock";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    public static final String SHOP_HOT_KEY = "shop:hot:";
     public static final String USER_SIGN_KEY = "sign:";
+    public static final String RATE_LIMIT_KEY = "rate:limit:";
 }
@@ -8,4 +8,5 @@ import java.time.LocalDateTime;
 public class RedisData {
     private LocalDateTime expireTime; // 逻辑过期时间,用于判断缓存是否过期
     private Object data; // 实际存储的数据,使用Object类型可以存储任意类型的数据
+    private Long delta; // 重建数据的耗时(毫秒),概率提前过期模式用它决定提前刷新的概率
 }
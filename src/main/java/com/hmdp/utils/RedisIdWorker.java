@@ -1,12 +1,25 @@
 package com.hmdp.utils;
 
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
+@Slf4j
 @Component
 public class RedisIdWorker {
     /**
@@ -18,29 +31,222 @@ public class RedisIdWorker {
      */
     private static final int COUNT_BITS = 32;
 
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    /**
+     * 异步预取号段的线程
+     */
+    private static final ExecutorService SEGMENT_LOADER =
+            Executors.newSingleThreadExecutor(new NamedThreadFactory("id-segment-loader-", true));
+
     private StringRedisTemplate stringRedisTemplate;
 
-    public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    /**
+     * 号段大小，大于0时每次从Redis预取一段序列号在本地分配，等于0时每个id都自增一次Redis
+     */
+    @Value("${hmdp.id-worker.segment-size:0}")
+    private int segmentSize;
+
+    /**
+     * 业务前缀 -> 号段缓冲
+     */
+    private final Map<String, SegmentBuffer> segmentBuffers = new ConcurrentHashMap<>();
+
+    private volatile DayContext dayContext;
+
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate, ReactiveStringRedisTemplate reactiveStringRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.reactiveStringRedisTemplate = reactiveStringRedisTemplate;
     }
 
     public long nextId(String keyPrefix) {
         // 1.生成时间戳
-        // 获取当前时间
-        LocalDateTime now = LocalDateTime.now();
-        // 将当前时间转换为秒级时间戳
-        long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
-        // 计算与开始时间的差值,得到相对时间戳
-        long timestamp = nowSecond - BEGIN_TIMESTAMP;
+        // 获取当前时间，按天缓存的上下文中已经算好了时区偏移和日期
+        long nowMillis = System.currentTimeMillis();
+        DayContext day = dayContext(nowMillis);
+        // 本地时间的秒数与开始时间的差值,得到相对时间戳
+        long timestamp = day.timestamp(nowMillis);
 
         // 2.生成序列号
-        // 2.1.获取当前日期，精确到天,格式为yyyy:MM:dd
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 2.2.自增长,使用Redis的increment命令生成序列号,key格式为icr:业务前缀:当前日期
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        // 2.1.获取当天的key,格式为icr:业务前缀:yyyy:MM:dd,同一天内直接复用
+        String key = day.key(keyPrefix);
+        // 2.2.自增长,使用Redis的increment命令生成序列号
+        // 号段模式下从本地号段中分配，号段用完时才访问Redis
+        long count = segmentSize > 0
+                ? segmentBuffer(keyPrefix).next(key)
+                : stringRedisTemplate.opsForValue().increment(key);
 
         // 3.拼接并返回
         // 将时间戳左移32位,为序列号预留位置,然后通过或运算将序列号拼接在后面
         return timestamp << COUNT_BITS | count;
     }
+
+    /**
+     * 非阻塞地生成id，序列号的自增在Lettuce的事件循环中完成，不占用调用线程
+     * @param keyPrefix 业务前缀
+     * @return id
+     */
+    public Mono<Long> nextIdReactive(String keyPrefix) {
+        if (segmentSize > 0) {
+            // 号段模式下序列号在本地分配，无需访问Redis
+            return Mono.fromSupplier(() -> nextId(keyPrefix));
+        }
+        long nowMillis = System.currentTimeMillis();
+        DayContext day = dayContext(nowMillis);
+        long timestamp = day.timestamp(nowMillis);
+        return reactiveStringRedisTemplate.opsForValue().increment(day.key(keyPrefix))
+                .map(count -> timestamp << COUNT_BITS | count);
+    }
+
+    long timestamp(long nowMillis) {
+        return dayContext(nowMillis).timestamp(nowMillis);
+    }
+
+    String sequenceKey(String keyPrefix, long nowMillis) {
+        return dayContext(nowMillis).key(keyPrefix);
+    }
+
+    /**
+     * 获取当天的上下文，只有跨天（或时区偏移变化）时才重新计算
+     */
+    private DayContext dayContext(long nowMillis) {
+        DayContext day = dayContext;
+        if (day == null || nowMillis < day.startMillis || nowMillis >= day.endMillis) {
+            day = DayContext.of(nowMillis);
+            dayContext = day;
+        }
+        return day;
+    }
+
+    private SegmentBuffer segmentBuffer(String keyPrefix) {
+        SegmentBuffer buffer = segmentBuffers.get(keyPrefix);
+        return buffer != null ? buffer : segmentBuffers.computeIfAbsent(keyPrefix, prefix -> new SegmentBuffer());
+    }
+
+    /**
+     * 一天内不变的数据：当天的起止时间、时区偏移、日期和各业务前缀的key
+     */
+    private static class DayContext {
+        private final long startMillis;
+        private final long endMillis;
+        private final long offsetSeconds;
+        private final String date;
+        private final Map<String, String> keys = new ConcurrentHashMap<>();
+
+        private DayContext(long startMillis, long endMillis, long offsetSeconds, String date) {
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.offsetSeconds = offsetSeconds;
+            this.date = date;
+        }
+
+        private static DayContext of(long nowMillis) {
+            ZoneId zone = ZoneId.systemDefault();
+            Instant now = Instant.ofEpochMilli(nowMillis);
+            LocalDate today = now.atZone(zone).toLocalDate();
+            long start = today.atStartOfDay(zone).toInstant().toEpochMilli();
+            long end = today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            // 夏令时等时区偏移变化时也要重新计算
+            ZoneOffsetTransition transition = zone.getRules().nextTransition(now);
+            if (transition != null) {
+                end = Math.min(end, transition.toEpochSecond() * 1000);
+            }
+            long offset = zone.getRules().getOffset(now).getTotalSeconds();
+            return new DayContext(start, end, offset, today.format(DATE_FORMATTER));
+        }
+
+        /**
+         * 与 LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) - BEGIN_TIMESTAMP 相同
+         */
+        private long timestamp(long nowMillis) {
+            return Math.floorDiv(nowMillis, 1000) + offsetSeconds - BEGIN_TIMESTAMP;
+        }
+
+        private String key(String keyPrefix) {
+            String key = keys.get(keyPrefix);
+            return key != null ? key : keys.computeIfAbsent(keyPrefix, prefix -> "icr:" + prefix + ":" + date);
+        }
+    }
+
+    /**
+     * 从Redis申请一个号段 INCRBY key segmentSize，返回 [max - segmentSize + 1, max]
+     */
+    private Segment allocate(String key) {
+        long max = stringRedisTemplate.opsForValue().increment(key, segmentSize);
+        return new Segment(key, max - segmentSize + 1, max);
+    }
+
+    /**
+     * 号段，[cursor, max]为尚未分配的序列号
+     */
+    private static class Segment {
+        private final String key;
+        private final AtomicLong cursor;
+        private final long max;
+
+        private Segment(String key, long min, long max) {
+            this.key = key;
+            this.cursor = new AtomicLong(min);
+            this.max = max;
+        }
+    }
+
+    /**
+     * 双缓冲号段：当前号段剩余量降到低水位时异步预取下一个号段，当前号段用完时直接切换
+     * 分配序列号只有一次CAS，号段的申请和切换都在锁内完成，保证本节点分配的序列号单调递增
+     */
+    private class SegmentBuffer {
+        private volatile Segment current;
+        private volatile Segment next;
+
+        private long next(String key) {
+            while (true) {
+                Segment segment = current;
+                // 日期变化时key随之变化，旧号段作废
+                if (segment != null && segment.key.equals(key)) {
+                    long value = segment.cursor.getAndIncrement();
+                    if (value <= segment.max) {
+                        // 剩余量恰好降到低水位时触发一次预取
+                        if (segment.max - value == segmentSize / 5) {
+                            preload(segment);
+                        }
+                        return value;
+                    }
+                }
+                switchSegment(segment, key);
+            }
+        }
+
+        private synchronized void switchSegment(Segment exhausted, String key) {
+            if (current != exhausted) {
+                // 其它线程已经切换过号段
+                return;
+            }
+            Segment prepared = next;
+            next = null;
+            if (prepared == null || !prepared.key.equals(key)) {
+                // 预取的号段还没准备好，同步申请
+                prepared = allocate(key);
+            }
+            current = prepared;
+        }
+
+        private void preload(Segment segment) {
+            SEGMENT_LOADER.execute(() -> {
+                synchronized (this) {
+                    // 号段已切换或已预取时不再申请
+                    if (current != segment || next != null) {
+                        return;
+                    }
+                    try {
+                        next = allocate(segment.key);
+                    } catch (Exception e) {
+                        log.warn("预取号段失败, key: {}", segment.key, e);
+                    }
+                }
+            });
+        }
+    }
 }
@@ -0,0 +1,185 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.io.file.FileNameUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lua脚本注册中心
+ * 启动时加载classpath下lua目录中所有的.lua脚本并通过pipeline执行SCRIPT LOAD，之后统一以EVALSHA执行，
+ * Redis重启等原因丢失脚本缓存时(NOSCRIPT)自动退回EVAL。同时统计每个脚本的调用次数和耗时。
+ */
+@Slf4j
+@Component
+public class RedisScriptRegistry {
+
+    /**
+     * 脚本统一放在lua目录下，classpath*:的根目录通配在jar包中不可靠，并且会扫描所有依赖的根目录
+     */
+    private static final String SCRIPT_LOCATION = "classpath*:lua/*.lua";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    /**
+     * 脚本名称(文件名去掉.lua) -> 脚本
+     */
+    private final Map<String, DefaultRedisScript<Long>> scripts = new ConcurrentHashMap<>();
+    /**
+     * 脚本名称 -> 调用统计
+     */
+    private final Map<String, ScriptStats> stats = new ConcurrentHashMap<>();
+
+    public RedisScriptRegistry(StringRedisTemplate stringRedisTemplate,
+                               ReactiveStringRedisTemplate reactiveStringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.reactiveStringRedisTemplate = reactiveStringRedisTemplate;
+    }
+
+    @PostConstruct
+    private void init() throws IOException {
+        // 1.扫描classpath下的所有lua脚本
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(SCRIPT_LOCATION);
+        for (Resource resource : resources) {
+            String name = FileNameUtil.mainName(resource.getFilename());
+            DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+            try (InputStream in = resource.getInputStream()) {
+                script.setScriptText(IoUtil.read(in, StandardCharsets.UTF_8));
+            }
+            script.setResultType(Long.class);
+            scripts.put(name, script);
+            stats.put(name, new ScriptStats());
+        }
+        // 2.通过pipeline一次性加载所有脚本 SCRIPT LOAD
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (DefaultRedisScript<Long> script : scripts.values()) {
+                    connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // 加载失败不影响启动，首次执行时会通过EVAL自动加载
+            log.warn("预加载lua脚本失败", e);
+        }
+        log.info("已加载lua脚本: {}", scripts.keySet());
+    }
+
+    /**
+     * 获取脚本
+     * @param name 脚本名称，即文件名去掉.lua
+     * @return 脚本
+     */
+    public DefaultRedisScript<Long> getScript(String name) {
+        DefaultRedisScript<Long> script = scripts.get(name);
+        if (script == null) {
+            throw new IllegalArgumentException("lua脚本不存在: " + name);
+        }
+        return script;
+    }
+
+    /**
+     * 执行脚本 EVALSHA sha numkeys key [key ...] arg [arg ...]，NOSCRIPT时退回EVAL
+     * @param name 脚本名称
+     * @param keys KEYS参数
+     * @param args ARGV参数
+     * @return 脚本返回值
+     */
+    public Long execute(String name, List<String> keys, Object... args) {
+        DefaultRedisScript<Long> script = getScript(name);
+        long begin = System.nanoTime();
+        boolean success = false;
+        try {
+            Long result = stringRedisTemplate.execute(script, keys, args);
+            success = true;
+            return result;
+        } finally {
+            record(name, System.nanoTime() - begin, success);
+        }
+    }
+
+    /**
+     * 非阻塞地执行脚本，同样使用EVALSHA，NOSCRIPT时退回EVAL
+     * @param name 脚本名称
+     * @param keys KEYS参数
+     * @param args ARGV参数
+     * @return 脚本返回值
+     */
+    public Mono<Long> executeReactive(String name, List<String> keys, String... args) {
+        DefaultRedisScript<Long> script = getScript(name);
+        return Mono.defer(() -> {
+            long begin = System.nanoTime();
+            return reactiveStringRedisTemplate.execute(script, keys, Arrays.asList(args))
+                    .next()
+                    .doOnSuccess(result -> record(name, System.nanoTime() - begin, true))
+                    .doOnError(e -> record(name, System.nanoTime() - begin, false));
+        });
+    }
+
+    /**
+     * 记录一次脚本调用
+     * @param name 脚本名称
+     * @param elapsedNanos 耗时
+     * @param success 是否成功
+     */
+    private void record(String name, long elapsedNanos, boolean success) {
+        ScriptStats scriptStats = stats.get(name);
+        if (scriptStats != null) {
+            scriptStats.record(elapsedNanos, success);
+        }
+    }
+
+    /**
+     * 各脚本的调用统计
+     * @return 脚本名称 -> 调用次数、失败次数、平均耗时、最大耗时(微秒)
+     */
+    public Map<String, Map<String, Object>> stats() {
+        Map<String, Map<String, Object>> result = new TreeMap<>();
+        stats.forEach((name, scriptStats) -> result.put(name, scriptStats.snapshot(scripts.get(name).getSha1())));
+        return result;
+    }
+
+    private static class ScriptStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long elapsedNanos, boolean success) {
+            calls.increment();
+            if (!success) {
+                errors.increment();
+            }
+            totalNanos.add(elapsedNanos);
+            maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+        }
+
+        private Map<String, Object> snapshot(String sha1) {
+            long count = calls.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("sha1", sha1);
+            map.put("calls", count);
+            map.put("errors", errors.sum());
+            map.put("avgMicros", count == 0 ? 0 : totalNanos.sum() / count / 1000);
+            map.put("maxMicros", maxNanos.get() / 1000);
+            return map;
+        }
+    }
+}
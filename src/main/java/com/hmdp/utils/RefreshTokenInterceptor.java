@@ -1,25 +1,25 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+public class RefreshTokenInterceptor implements AsyncHandlerInterceptor {
 
-public class RefreshTokenInterceptor implements HandlerInterceptor {
+    private TokenSessionCache tokenSessionCache;
 
-    private StringRedisTemplate stringRedisTemplate;
+    private SignedTokenCodec signedTokenCodec;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    private TokenRevocationList tokenRevocationList;
+
+    public RefreshTokenInterceptor(TokenSessionCache tokenSessionCache, SignedTokenCodec signedTokenCodec,
+                                   TokenRevocationList tokenRevocationList) {
+        this.tokenSessionCache = tokenSessionCache;
+        this.signedTokenCodec = signedTokenCodec;
+        this.tokenRevocationList = tokenRevocationList;
     }
 
     @Override
@@ -29,23 +29,43 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
         if (StrUtil.isBlank(token)) {
             return true;
         }
-        // 2.基于TOKEN获取redis中的用户
-        String key  = LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+        // 2.基于TOKEN获取用户
+        UserDTO userDTO = signedTokenCodec.isSigned(token)
+                ? verifySignedToken(request, token)
+                // Redis会话，优先读取本地缓存，有效期按阈值批量异步刷新
+                : tokenSessionCache.get(token);
         // 3.判断用户是否存在
-        if (userMap.isEmpty()) {
+        if (userDTO == null) {
             return true;
         }
-        // 5.将查询到的hash数据转为UserDTO
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
-        // 6.存在，保存用户信息到 ThreadLocal
+        // 4.存在，保存用户信息到 ThreadLocal
         UserHolder.saveUser(userDTO);
-        // 7.刷新token有效期
-        stringRedisTemplate.expire(key, LOGIN_USER_TTL, TimeUnit.MINUTES);
-        // 8.放行
+        // 5.放行
         return true;
     }
 
+    /**
+     * 校验签名令牌，敏感接口还需要检查令牌是否已被吊销
+     * @return 令牌中的用户，校验不通过返回null
+     */
+    private UserDTO verifySignedToken(HttpServletRequest request, String token) {
+        SignedTokenCodec.Claims claims = signedTokenCodec.verify(token);
+        if (claims == null) {
+            return null;
+        }
+        if (tokenRevocationList.requiresCheck(request.getRequestURI())
+                && tokenRevocationList.isRevoked(claims.getJti())) {
+            return null;
+        }
+        return claims.getUser();
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 异步请求不会回调afterCompletion，释放Tomcat线程前移除用户
+        UserHolder.removeUser();
+    }
+
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         // 移除用户
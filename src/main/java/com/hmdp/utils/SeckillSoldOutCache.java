@@ -0,0 +1,111 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_RESTOCK_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 本地售罄标记，库存为0的秒杀券直接在JVM内拒绝，不再访问Redis
+ * 售罄和补库存事件通过Redis发布订阅广播到所有节点
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutCache implements MessageListener {
+
+    /**
+     * 售罄标记的有效期，过期后重新由lua脚本判断，避免错过补库存消息时永久拒绝
+     */
+    private static final long SOLD_OUT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    /**
+     * 优惠券id -> 标记售罄的时间
+     */
+    private final Map<Long, Long> soldOutVouchers = new ConcurrentHashMap<>();
+
+    public SeckillSoldOutCache(StringRedisTemplate stringRedisTemplate,
+                               ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+                               RedisMessageListenerContainer container) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.reactiveStringRedisTemplate = reactiveStringRedisTemplate;
+        container.addMessageListener(this,
+                Arrays.asList(new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL), new ChannelTopic(SECKILL_RESTOCK_CHANNEL)));
+    }
+
+    /**
+     * 判断优惠券是否已售罄
+     * @param voucherId 优惠券id
+     * @return true代表已售罄
+     */
+    public boolean isSoldOut(Long voucherId) {
+        Long markTime = soldOutVouchers.get(voucherId);
+        if (markTime == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - markTime > SOLD_OUT_TTL_MILLIS) {
+            soldOutVouchers.remove(voucherId, markTime);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 标记售罄并通知其它节点
+     * @param voucherId 优惠券id
+     */
+    public void markSoldOut(Long voucherId) {
+        // 本节点首次标记时才广播，避免售罄后的每个请求都发布消息
+        if (soldOutVouchers.put(voucherId, System.currentTimeMillis()) == null) {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+        }
+    }
+
+    /**
+     * 非阻塞地标记售罄并通知其它节点，供响应式秒杀在Lettuce事件循环线程上调用
+     * @param voucherId 优惠券id
+     * @return 广播完成信号
+     */
+    public Mono<Void> markSoldOutReactive(Long voucherId) {
+        return Mono.defer(() -> soldOutVouchers.put(voucherId, System.currentTimeMillis()) == null
+                ? reactiveStringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString()).then()
+                : Mono.empty());
+    }
+
+    /**
+     * 补库存后清除售罄标记并通知其它节点
+     * @param voucherId 优惠券id
+     */
+    public void clear(Long voucherId) {
+        soldOutVouchers.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_RESTOCK_CHANNEL, voucherId.toString());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        Long voucherId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (SECKILL_SOLD_OUT_CHANNEL.equals(channel)) {
+            soldOutVouchers.putIfAbsent(voucherId, System.currentTimeMillis());
+        } else {
+            soldOutVouchers.remove(voucherId);
+        }
+        log.debug("收到秒杀券库存消息, channel: {}, voucherId: {}", channel, voucherId);
+    }
+}
@@ -0,0 +1,309 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀库存分桶
+ * 把一张秒杀券的库存和下单用户拆分到多个桶，每个桶的key带有独立的hash tag，集群模式下分布到不同分片，
+ * 避免热门秒杀券的所有请求集中在同一个key上。用户按id散列到固定的桶，一人一单也在该桶内判断。
+ */
+@Component
+public class SeckillStockBuckets {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+    private final RedisScriptRegistry redisScriptRegistry;
+
+    /**
+     * 新增秒杀券时使用的分桶数量，1表示不分桶
+     */
+    @Value("${hmdp.seckill.stock-buckets:1}")
+    private int stockBuckets;
+
+    /**
+     * 优惠券id -> 分桶数量，分桶数量在新增秒杀券时确定，之后不再变化
+     */
+    private final Map<Long, Integer> bucketCounts = new ConcurrentHashMap<>();
+
+    public SeckillStockBuckets(StringRedisTemplate stringRedisTemplate,
+                               ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+                               RedisScriptRegistry redisScriptRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.reactiveStringRedisTemplate = reactiveStringRedisTemplate;
+        this.redisScriptRegistry = redisScriptRegistry;
+    }
+
+    /**
+     * 保存秒杀库存和秒杀时间到Redis，分桶模式下库存均匀拆分到各个桶，每个桶各保存一份秒杀时间
+     * @param voucherId 优惠券id
+     * @param stock 库存
+     * @param beginTime 秒杀开始时间
+     * @param endTime 秒杀结束时间
+     */
+    public void init(Long voucherId, int stock, LocalDateTime beginTime, LocalDateTime endTime) {
+        Map<String, String> window = new HashMap<>(2);
+        if (beginTime != null) {
+            window.put("begin", String.valueOf(toEpochMilli(beginTime)));
+        }
+        if (endTime != null) {
+            window.put("end", String.valueOf(toEpochMilli(endTime)));
+        }
+        int buckets = Math.max(stockBuckets, 1);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            // 秒杀时间 hmset seckill:window:{id} begin .. end ..
+            if (!window.isEmpty()) {
+                conn.hMSet(SECKILL_WINDOW_KEY + voucherId, window);
+            }
+            if (buckets == 1) {
+                // 不分桶，key为前缀+优惠券id
+                conn.set(SECKILL_STOCK_KEY + voucherId, String.valueOf(stock));
+                return null;
+            }
+            for (int i = 0; i < buckets; i++) {
+                // 余数分给前面的桶
+                int bucketStock = stock / buckets + (i < stock % buckets ? 1 : 0);
+                conn.set(stockKey(voucherId, i), String.valueOf(bucketStock));
+                if (!window.isEmpty()) {
+                    conn.hMSet(windowKey(voucherId, i), window);
+                }
+            }
+            conn.set(SECKILL_BUCKETS_KEY + voucherId, String.valueOf(buckets));
+            return null;
+        });
+        bucketCounts.put(voucherId, buckets);
+    }
+
+    /**
+     * 查询优惠券的分桶数量，未分桶的优惠券返回1。
+     * 只缓存Redis中存在的分桶数，默认值不缓存，否则优惠券稍后分桶(或由其它实例分桶)时本地会一直按不分桶处理
+     * @param voucherId 优惠券id
+     * @return 分桶数量
+     */
+    public int bucketCount(Long voucherId) {
+        Integer cached = bucketCounts.get(voucherId);
+        if (cached != null) {
+            return cached;
+        }
+        String buckets = stringRedisTemplate.opsForValue().get(SECKILL_BUCKETS_KEY + voucherId);
+        if (buckets == null) {
+            return 1;
+        }
+        int count = Integer.parseInt(buckets);
+        bucketCounts.putIfAbsent(voucherId, count);
+        return count;
+    }
+
+    /**
+     * 批量查询秒杀券在Redis中的剩余库存，分桶模式下为各个桶的库存之和
+     * @param voucherIds 优惠券id
+     * @return 优惠券id -> 剩余库存，Redis中没有库存的优惠券不在结果中
+     */
+    public Map<Long, Integer> remainingStocks(List<Long> voucherIds) {
+        // 1.计算每张券的库存key，一次MGET读取
+        List<String> keys = new ArrayList<>();
+        List<Long> owners = new ArrayList<>();
+        for (Long voucherId : voucherIds) {
+            int buckets = bucketCount(voucherId);
+            for (int i = 0; i < buckets; i++) {
+                keys.add(buckets == 1 ? SECKILL_STOCK_KEY + voucherId : stockKey(voucherId, i));
+                owners.add(voucherId);
+            }
+        }
+        if (keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(keys);
+        // 2.按优惠券汇总各个桶的库存
+        Map<Long, Integer> stocks = new HashMap<>(voucherIds.size());
+        for (int i = 0; values != null && i < values.size(); i++) {
+            if (values.get(i) != null) {
+                stocks.merge(owners.get(i), Integer.parseInt(values.get(i)), Integer::sum);
+            }
+        }
+        return stocks;
+    }
+
+    /**
+     * 非阻塞地查询优惠券的分桶数量，本地未缓存时通过响应式GET读取，不阻塞Lettuce事件循环线程，
+     * 与bucketCount一样只缓存Redis中存在的分桶数
+     * @param voucherId 优惠券id
+     * @return 分桶数量
+     */
+    public Mono<Integer> bucketCountReactive(Long voucherId) {
+        Integer cached = bucketCounts.get(voucherId);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return reactiveStringRedisTemplate.opsForValue().get(SECKILL_BUCKETS_KEY + voucherId)
+                .map(Integer::parseInt)
+                .doOnNext(buckets -> bucketCounts.putIfAbsent(voucherId, buckets))
+                .defaultIfEmpty(1);
+    }
+
+    /**
+     * 分桶模式下执行秒杀，返回值与seckill.lua一致：0成功，1库存不足，2重复下单，3尚未开始，4已经结束
+     * @param voucherId 优惠券id
+     * @param userId 用户id
+     * @param orderId 订单id
+     * @return 秒杀结果
+     */
+    public long seckill(Long voucherId, Long userId, long orderId) {
+        int buckets = bucketCount(voucherId);
+        int home = bucketOf(userId, buckets);
+        String[] args = {voucherId.toString(), userId.toString(), String.valueOf(orderId),
+                String.valueOf(System.currentTimeMillis())};
+        // 1.在用户所在的桶扣库存
+        Long result = redisScriptRegistry.execute("seckill_bucket",
+                Arrays.asList(stockKey(voucherId, home), orderKey(voucherId, home), windowKey(voucherId, home)),
+                (Object[]) args);
+        if (result == null) {
+            return 1;
+        }
+        if (result == 0) {
+            enqueueOrder(voucherId, userId, orderId, stockKey(voucherId, home), orderKey(voucherId, home));
+            return 0;
+        }
+        if (result > 0) {
+            return result;
+        }
+        // 2.本桶库存不足，依次向相邻桶借库存
+        for (int i = 1; i < buckets; i++) {
+            String neighbour = stockKey(voucherId, (home + i) % buckets);
+            Long borrowed = redisScriptRegistry.execute("seckill_bucket_borrow", Collections.singletonList(neighbour), (Object[]) args);
+            if (borrowed != null && borrowed == 0) {
+                enqueueOrder(voucherId, userId, orderId, neighbour, orderKey(voucherId, home));
+                return 0;
+            }
+        }
+        // 3.所有桶都没有库存，释放占用的一人一单资格
+        stringRedisTemplate.opsForSet().remove(orderKey(voucherId, home), userId.toString());
+        return 1;
+    }
+
+    /**
+     * 分桶模式下非阻塞地执行秒杀，流程和返回值与{@link #seckill(Long, Long, long)}一致
+     * @param voucherId 优惠券id
+     * @param userId 用户id
+     * @param orderId 订单id
+     * @param buckets 分桶数量，由{@link #bucketCountReactive(Long)}查询
+     * @return 秒杀结果
+     */
+    public Mono<Long> seckillReactive(Long voucherId, Long userId, long orderId, int buckets) {
+        int home = bucketOf(userId, buckets);
+        String[] args = {voucherId.toString(), userId.toString(), String.valueOf(orderId),
+                String.valueOf(System.currentTimeMillis())};
+        // 1.在用户所在的桶扣库存
+        return redisScriptRegistry.executeReactive("seckill_bucket",
+                        Arrays.asList(stockKey(voucherId, home), orderKey(voucherId, home), windowKey(voucherId, home)),
+                        args)
+                .flatMap(result -> {
+                    if (result == 0) {
+                        return enqueueOrderReactive(voucherId, userId, orderId,
+                                stockKey(voucherId, home), orderKey(voucherId, home));
+                    }
+                    if (result > 0) {
+                        return Mono.just(result);
+                    }
+                    // 2.本桶库存不足，依次向相邻桶借库存，借到即停止
+                    return Flux.range(1, buckets - 1)
+                            .map(i -> stockKey(voucherId, (home + i) % buckets))
+                            .concatMap(neighbour -> redisScriptRegistry.executeReactive("seckill_bucket_borrow",
+                                            Collections.singletonList(neighbour), args)
+                                    .filter(borrowed -> borrowed == 0)
+                                    .map(borrowed -> neighbour))
+                            .next()
+                            .flatMap(neighbour -> enqueueOrderReactive(voucherId, userId, orderId,
+                                    neighbour, orderKey(voucherId, home)))
+                            // 3.所有桶都没有库存，释放占用的一人一单资格
+                            .switchIfEmpty(Mono.defer(() -> reactiveStringRedisTemplate.opsForSet()
+                                    .remove(orderKey(voucherId, home), userId.toString())
+                                    .thenReturn(1L)));
+                })
+                .defaultIfEmpty(1L);
+    }
+
+    /**
+     * 脚本扣减库存成功后发送订单消息 XADD stream.orders * userId .. voucherId .. id ..
+     * 各个桶的key分布在不同分片，stream.orders不能在脚本中访问，写入失败时归还库存和一人一单资格
+     * @param stockKey 扣减了库存的桶
+     * @param orderKey 用户所在桶的下单用户key
+     */
+    private void enqueueOrder(Long voucherId, Long userId, long orderId, String stockKey, String orderKey) {
+        try {
+            stringRedisTemplate.opsForStream().add(SECKILL_ORDER_STREAM, orderMessage(voucherId, userId, orderId));
+        } catch (RuntimeException e) {
+            stringRedisTemplate.opsForValue().increment(stockKey);
+            stringRedisTemplate.opsForSet().remove(orderKey, userId.toString());
+            throw e;
+        }
+    }
+
+    private Mono<Long> enqueueOrderReactive(Long voucherId, Long userId, long orderId, String stockKey, String orderKey) {
+        return reactiveStringRedisTemplate.opsForStream()
+                .add(SECKILL_ORDER_STREAM, orderMessage(voucherId, userId, orderId))
+                .thenReturn(0L)
+                .onErrorResume(e -> reactiveStringRedisTemplate.opsForValue().increment(stockKey)
+                        .then(reactiveStringRedisTemplate.opsForSet().remove(orderKey, userId.toString()))
+                        .then(Mono.error(e)));
+    }
+
+    private static Map<String, String> orderMessage(Long voucherId, Long userId, long orderId) {
+        Map<String, String> message = new HashMap<>(4);
+        message.put("userId", userId.toString());
+        message.put("voucherId", voucherId.toString());
+        message.put("id", String.valueOf(orderId));
+        return message;
+    }
+
+    /**
+     * 用户所在的桶
+     */
+    public static int bucketOf(Long userId, int buckets) {
+        return Math.floorMod(Long.hashCode(userId), buckets);
+    }
+
+    /**
+     * 桶的库存key，同一个桶的key使用相同的hash tag，保证lua脚本访问的key在同一个分片
+     */
+    public static String stockKey(Long voucherId, int bucket) {
+        return SECKILL_STOCK_KEY + "{" + voucherId + "-" + bucket + "}";
+    }
+
+    /**
+     * 桶的下单用户key
+     */
+    public static String orderKey(Long voucherId, int bucket) {
+        return SECKILL_ORDER_KEY + "{" + voucherId + "-" + bucket + "}";
+    }
+
+    /**
+     * 桶的秒杀时间key
+     */
+    public static String windowKey(Long voucherId, int bucket) {
+        return SECKILL_WINDOW_KEY + "{" + voucherId + "-" + bucket + "}";
+    }
+
+    public static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,168 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_RESTOCK_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_WINDOW_KEY;
+
+/**
+ * 本地秒杀时间窗口，秒杀开始前和结束后的请求直接在JVM内拒绝，不经过任何网络调用
+ * 秒杀时间首次使用时从Redis加载，Redis中没有时从数据库加载并写回Redis；新增秒杀券时通过补库存消息失效
+ */
+@Slf4j
+@Component
+public class SeckillTimeWindowCache implements MessageListener {
+
+    /**
+     * 秒杀时间窗口检查结果，与秒杀lua脚本的返回值一致
+     */
+    public static final int IN_WINDOW = 0;
+    public static final int NOT_STARTED = 3;
+    public static final int ENDED = 4;
+    /**
+     * 秒杀券不存在
+     */
+    public static final int NOT_FOUND = 5;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 优惠券id -> {开始时间, 结束时间}(毫秒)
+     */
+    private final Map<Long, long[]> windows = new ConcurrentHashMap<>();
+
+    /**
+     * 不存在的优惠券id，数量有上限且短时间过期，随机id的请求在本地拒绝，不会每次都查询Redis和数据库
+     */
+    private final Cache<Long, Boolean> missing;
+
+    public SeckillTimeWindowCache(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container,
+                                  @Value("${hmdp.seckill.missing-voucher.maximum-size:10000}") long missingMaximumSize,
+                                  @Value("${hmdp.seckill.missing-voucher.ttl:10s}") Duration missingTtl) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.missing = Caffeine.newBuilder()
+                .maximumSize(missingMaximumSize)
+                .expireAfterWrite(missingTtl)
+                .build();
+        container.addMessageListener(this, new ChannelTopic(SECKILL_RESTOCK_CHANNEL));
+    }
+
+    /**
+     * 检查当前时间是否在秒杀时间内
+     * @param voucherId 优惠券id
+     * @param dbFallback 查询数据库的函数
+     * @return 0在秒杀时间内，3尚未开始，4已经结束，5秒杀券不存在
+     */
+    public int check(Long voucherId, Function<Long, SeckillVoucher> dbFallback) {
+        long[] window = getWindow(voucherId, dbFallback);
+        if (window == null) {
+            return NOT_FOUND;
+        }
+        long now = System.currentTimeMillis();
+        if (now < window[0]) {
+            return NOT_STARTED;
+        }
+        if (now > window[1]) {
+            return ENDED;
+        }
+        return IN_WINDOW;
+    }
+
+    /**
+     * 查询秒杀时间，用于前端倒计时
+     * @param voucherId 优惠券id
+     * @param dbFallback 查询数据库的函数
+     * @return 开始时间、结束时间和服务器当前时间(毫秒)，优惠券不存在时返回null
+     */
+    public Map<String, Long> query(Long voucherId, Function<Long, SeckillVoucher> dbFallback) {
+        long[] window = getWindow(voucherId, dbFallback);
+        if (window == null) {
+            return null;
+        }
+        Map<String, Long> result = new HashMap<>(4);
+        result.put("beginTime", window[0] == Long.MIN_VALUE ? null : window[0]);
+        result.put("endTime", window[1] == Long.MAX_VALUE ? null : window[1]);
+        result.put("now", System.currentTimeMillis());
+        return result;
+    }
+
+    /**
+     * @return 秒杀时间，优惠券不存在时返回null
+     */
+    private long[] getWindow(Long voucherId, Function<Long, SeckillVoucher> dbFallback) {
+        long[] window = windows.get(voucherId);
+        if (window != null) {
+            return window;
+        }
+        // 不存在的优惠券记录在有上限的短期缓存中，不放入windows，避免随机id撑大本地缓存
+        if (missing.getIfPresent(voucherId) != null) {
+            return null;
+        }
+        window = windows.computeIfAbsent(voucherId, id -> load(id, dbFallback));
+        if (window == null) {
+            missing.put(voucherId, Boolean.TRUE);
+        }
+        return window;
+    }
+
+    private long[] load(Long voucherId, Function<Long, SeckillVoucher> dbFallback) {
+        // 1.从Redis查询 hmget seckill:window:{id} begin end
+        String key = SECKILL_WINDOW_KEY + voucherId;
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(key, Arrays.asList("begin", "end"));
+        if (values.get(0) != null || values.get(1) != null) {
+            return new long[]{
+                    values.get(0) == null ? Long.MIN_VALUE : Long.parseLong((String) values.get(0)),
+                    values.get(1) == null ? Long.MAX_VALUE : Long.parseLong((String) values.get(1))
+            };
+        }
+        // 2.Redis中没有，查询数据库
+        SeckillVoucher voucher = dbFallback.apply(voucherId);
+        if (voucher == null) {
+            return null;
+        }
+        long[] window = {
+                voucher.getBeginTime() == null ? Long.MIN_VALUE : SeckillStockBuckets.toEpochMilli(voucher.getBeginTime()),
+                voucher.getEndTime() == null ? Long.MAX_VALUE : SeckillStockBuckets.toEpochMilli(voucher.getEndTime())
+        };
+        // 3.写回Redis，供lua脚本校验
+        Map<String, String> map = new HashMap<>(2);
+        if (voucher.getBeginTime() != null) {
+            map.put("begin", String.valueOf(window[0]));
+        }
+        if (voucher.getEndTime() != null) {
+            map.put("end", String.valueOf(window[1]));
+        }
+        if (!map.isEmpty()) {
+            stringRedisTemplate.opsForHash().putAll(key, map);
+        }
+        return window;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        // 新增或补库存的秒杀券，下次使用时重新加载秒杀时间
+        Long voucherId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+        windows.remove(voucherId);
+        missing.invalidate(voucherId);
+        log.debug("秒杀时间失效, voucherId: {}", voucherId);
+    }
+}
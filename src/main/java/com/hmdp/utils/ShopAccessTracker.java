@@ -0,0 +1,145 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SHOP_HOT_KEY;
+
+/**
+ * 商铺访问频率统计，先在本地计数，定期合并到Redis中按天划分的zset，发布时据此预热热门商铺
+ */
+@Slf4j
+@Component
+public class ShopAccessTracker {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /**
+     * 每天的访问统计保留的天数
+     */
+    private static final long KEEP_DAYS = 2;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final ScheduledExecutorService flusher =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("shop-access-flusher-", true));
+
+    @Value("${hmdp.cache.warm-up.access-flush-interval:10s}")
+    private Duration flushInterval;
+
+    /**
+     * 商铺id -> 本地访问次数，刷新到Redis时通过getAndSet整体替换
+     */
+    private final AtomicReference<Map<Long, LongAdder>> counts = new AtomicReference<>(new ConcurrentHashMap<>());
+
+    /**
+     * 上一次刷新时换下的计数，只由刷新线程访问。换下前已取到旧map的record()可能在刷新之后才计数，
+     * 下一次刷新时再取一次，经过一个刷新间隔后不会再有写入
+     */
+    private Map<Long, LongAdder> retired = new ConcurrentHashMap<>();
+
+    public ShopAccessTracker(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    private void init() {
+        long interval = flushInterval.toMillis();
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        flusher.shutdown();
+        flush();
+    }
+
+    /**
+     * 记录一次访问
+     * @param shopId 商铺id
+     */
+    public void record(Long shopId) {
+        counts.get().computeIfAbsent(shopId, id -> new LongAdder()).increment();
+    }
+
+    /**
+     * 查询今天和昨天访问最多的商铺
+     * @param n 数量
+     * @return 商铺id，按访问次数从高到低
+     */
+    public Set<Long> topN(int n) {
+        Set<Long> ids = new LinkedHashSet<>();
+        LocalDate today = LocalDate.now();
+        for (LocalDate date : new LocalDate[]{today, today.minusDays(1)}) {
+            Set<String> members = stringRedisTemplate.opsForZSet()
+                    .reverseRange(SHOP_HOT_KEY + date.format(DATE_FORMATTER), 0, n - 1);
+            if (members == null) {
+                continue;
+            }
+            for (String member : members) {
+                if (ids.size() >= n) {
+                    return ids;
+                }
+                ids.add(Long.valueOf(member));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 把本地计数通过管道合并到当天的zset
+     */
+    private synchronized void flush() {
+        // 1.换下当前计数，与上一次换下的计数一起取出，sumThenReset保证每次计数只合并一次
+        Map<Long, LongAdder> current = counts.getAndSet(new ConcurrentHashMap<>());
+        Map<Long, Long> snapshot = new HashMap<>();
+        drain(retired, snapshot);
+        drain(current, snapshot);
+        retired = current;
+        if (snapshot.isEmpty()) {
+            return;
+        }
+        // 2.通过管道合并到当天的zset
+        String key = SHOP_HOT_KEY + LocalDate.now().format(DATE_FORMATTER);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                snapshot.forEach((id, count) -> conn.zIncrBy(key, count, id.toString()));
+                conn.expire(key, TimeUnit.DAYS.toSeconds(KEEP_DAYS));
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("刷新商铺访问统计失败", e);
+        }
+    }
+
+    private static void drain(Map<Long, LongAdder> counts, Map<Long, Long> snapshot) {
+        counts.forEach((id, count) -> {
+            long sum = count.sumThenReset();
+            if (sum > 0) {
+                snapshot.merge(id, sum, Long::sum);
+            }
+        });
+    }
+}
@@ -0,0 +1,215 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 商铺id的布隆过滤器，拦截不存在的商铺id，避免缓存穿透时写入大量空值key并查询数据库
+ * 过滤器按版本命名，当前版本记录在 bloom:shop:current 中，重建时写入新版本后再切换，切换通过发布订阅通知所有节点
+ */
+@Slf4j
+@Component
+public class ShopBloomFilter implements MessageListener {
+
+    /**
+     * 每次从数据库读取的商铺id数量
+     */
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    private final RedissonClient redissonClient;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ShopMapper shopMapper;
+
+    @Value("${hmdp.bloom.shop.expected-insertions:1000000}")
+    private long expectedInsertions;
+
+    @Value("${hmdp.bloom.shop.false-probability:0.01}")
+    private double falseProbability;
+
+    private volatile RBloomFilter<Long> current;
+
+    /**
+     * 判断次数、拒绝次数、商铺不存在的次数
+     */
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+
+    public ShopBloomFilter(RedissonClient redissonClient, StringRedisTemplate stringRedisTemplate,
+                           ShopMapper shopMapper, RedisMessageListenerContainer container) {
+        this.redissonClient = redissonClient;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.shopMapper = shopMapper;
+        container.addMessageListener(this, new ChannelTopic(SHOP_BLOOM_SWITCH_CHANNEL));
+    }
+
+    @PostConstruct
+    private void init() {
+        // 1.已有可用的过滤器，直接使用
+        String name = stringRedisTemplate.opsForValue().get(SHOP_BLOOM_CURRENT_KEY);
+        if (name != null && redissonClient.getBloomFilter(name).isExists()) {
+            current = redissonClient.getBloomFilter(name);
+            return;
+        }
+        // 2.没有则加锁构建，多个节点同时启动时只构建一次
+        RLock lock = redissonClient.getLock(LOCK_SHOP_BLOOM_KEY);
+        lock.lock();
+        try {
+            name = stringRedisTemplate.opsForValue().get(SHOP_BLOOM_CURRENT_KEY);
+            if (name != null && redissonClient.getBloomFilter(name).isExists()) {
+                current = redissonClient.getBloomFilter(name);
+            } else {
+                build();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 判断商铺是否可能存在
+     * @param id 商铺id
+     * @return false代表一定不存在
+     */
+    public boolean mightContain(Long id) {
+        checks.incrementAndGet();
+        if (current.contains(id)) {
+            return true;
+        }
+        rejections.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 新增商铺后加入过滤器
+     * 写入Redis中记录的当前版本，重建期间切换前后新增的商铺由重建的补偿扫描兜底
+     * @param id 商铺id
+     */
+    public void add(Long id) {
+        String name = stringRedisTemplate.opsForValue().get(SHOP_BLOOM_CURRENT_KEY);
+        RBloomFilter<Long> filter = current;
+        if (name != null && !name.equals(filter.getName())) {
+            redissonClient.<Long>getBloomFilter(name).add(id);
+        }
+        filter.add(id);
+    }
+
+    /**
+     * 记录一次过滤器判断可能存在、数据库中却不存在的查询，用于统计实际误判率
+     */
+    public void recordNotFound() {
+        notFound.incrementAndGet();
+    }
+
+    /**
+     * 在线重建：按新版本名称构建完整的过滤器后切换，旧版本延迟过期
+     */
+    public void rebuild() {
+        RLock lock = redissonClient.getLock(LOCK_SHOP_BLOOM_KEY);
+        if (!lock.tryLock()) {
+            throw new IllegalStateException("布隆过滤器正在重建");
+        }
+        try {
+            RBloomFilter<Long> old = current;
+            build();
+            // 旧版本保留一段时间，等待其它节点收到切换消息
+            if (old != null) {
+                old.expire(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void build() {
+        // 1.创建新版本的过滤器
+        RBloomFilter<Long> filter = redissonClient.getBloomFilter(SHOP_BLOOM_KEY + System.currentTimeMillis());
+        filter.tryInit(expectedInsertions, falseProbability);
+        // 2.按id分批加载全部商铺
+        long maxId = load(filter, 0L);
+        // 3.切换并通知其它节点
+        current = filter;
+        stringRedisTemplate.opsForValue().set(SHOP_BLOOM_CURRENT_KEY, filter.getName());
+        stringRedisTemplate.convertAndSend(SHOP_BLOOM_SWITCH_CHANNEL, filter.getName());
+        // 4.补偿扫描，加入加载期间新增到旧版本中的商铺
+        load(filter, maxId);
+        log.info("商铺布隆过滤器构建完成, name: {}, count: {}", filter.getName(), filter.count());
+    }
+
+    /**
+     * 将id大于lastId的商铺加入过滤器
+     * @return 加载到的最大id
+     */
+    private long load(RBloomFilter<Long> filter, long lastId) {
+        while (true) {
+            List<Object> ids = shopMapper.selectObjs(new QueryWrapper<Shop>()
+                    .select("id").gt("id", lastId).orderByAsc("id").last("limit " + LOAD_BATCH_SIZE));
+            for (Object id : ids) {
+                lastId = ((Number) id).longValue();
+                filter.add(lastId);
+            }
+            if (ids.size() < LOAD_BATCH_SIZE) {
+                return lastId;
+            }
+        }
+    }
+
+    /**
+     * 过滤器的参数和误判率，估算误判率 (1 - e^(-kn/m))^k
+     * 实际误判率为不存在的商铺中未被拦截的比例
+     */
+    public Map<String, Object> stats() {
+        RBloomFilter<Long> filter = current;
+        long m = filter.getSize();
+        int k = filter.getHashIterations();
+        long n = filter.count();
+        long notFoundCount = notFound.get();
+        long rejectionCount = rejections.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", filter.getName());
+        stats.put("expectedInsertions", filter.getExpectedInsertions());
+        stats.put("falseProbability", filter.getFalseProbability());
+        stats.put("size", m);
+        stats.put("hashIterations", k);
+        stats.put("count", n);
+        stats.put("estimatedFalsePositiveRate", Math.pow(1 - Math.exp(-(double) k * n / m), k));
+        stats.put("checks", checks.get());
+        stats.put("rejections", rejectionCount);
+        stats.put("falsePositives", Math.max(0, notFoundCount - rejectionCount));
+        stats.put("observedFalsePositiveRate",
+                notFoundCount == 0 ? 0D : (double) Math.max(0, notFoundCount - rejectionCount) / notFoundCount);
+        return stats;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String name = new String(message.getBody(), StandardCharsets.UTF_8);
+        RBloomFilter<Long> filter = current;
+        if (filter == null || !name.equals(filter.getName())) {
+            current = redissonClient.getBloomFilter(name);
+            log.info("切换商铺布隆过滤器, name: {}", name);
+        }
+    }
+}
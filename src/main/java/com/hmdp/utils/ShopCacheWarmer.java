@@ -0,0 +1,117 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.service.IShopService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * 启动时预热商铺缓存
+ * 1.按id分页读取tb_shop，通过管道写入商铺缓存(格式与查询使用的策略一致)和GEO坐标
+ * 2.按访问统计把热门商铺加载到本地缓存
+ * ApplicationRunner执行完成后应用才会进入ACCEPTING_TRAFFIC就绪状态，预热期间不会接收流量
+ */
+@Slf4j
+@Component
+public class ShopCacheWarmer implements ApplicationRunner {
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopAccessTracker shopAccessTracker;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.cache.warm-up.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.cache.warm-up.page-size:500}")
+    private int pageSize;
+
+    @Value("${hmdp.cache.warm-up.hot-top-n:100}")
+    private int hotTopN;
+
+    @Value("${hmdp.cache.shop-strategy:PASS_THROUGH}")
+    private CacheStrategy shopCacheStrategy;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        try {
+            int count = warmUpShops();
+            Set<Long> hotIds = shopAccessTracker.topN(hotTopN);
+            shopService.preloadCache(hotIds);
+            log.info("商铺缓存预热完成, 商铺: {}, 热门商铺: {}, 耗时: {}ms",
+                    count, hotIds.size(), System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            // 预热失败不影响启动，由查询时按需加载
+            log.error("商铺缓存预热失败", e);
+        }
+    }
+
+    private int warmUpShops() {
+        long lastId = 0;
+        int count = 0;
+        while (true) {
+            // 1.按id分页读取，避免深分页，记录耗时作为概率提前过期的重建耗时
+            long loadBegin = System.currentTimeMillis();
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .gt("id", lastId).orderByAsc("id").last("limit " + pageSize));
+            if (shops.isEmpty()) {
+                return count;
+            }
+            // 2.写入商铺缓存
+            Map<Long, Shop> shopMap = shops.stream().collect(Collectors.toMap(Shop::getId, Function.identity()));
+            long loadMillis = (System.currentTimeMillis() - loadBegin) / shops.size();
+            cacheClient.warmUp(CACHE_SHOP_KEY, shopMap, shopCacheStrategy, loadMillis, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            // 3.按类型写入GEO坐标 GEOADD shop:geo:{typeId} x y id
+            Map<Long, List<Shop>> byType = shops.stream().collect(Collectors.groupingBy(Shop::getTypeId));
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                byType.forEach((typeId, list) -> conn.geoAdd(SHOP_GEO_KEY + typeId, list.stream()
+                        .map(shop -> new RedisGeoCommands.GeoLocation<>(
+                                shop.getId().toString(), new Point(shop.getX(), shop.getY())))
+                        .collect(Collectors.toList())));
+                return null;
+            });
+            count += shops.size();
+            lastId = shops.get(shops.size() - 1).getId();
+            if (shops.size() < pageSize) {
+                return count;
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * HMAC-SHA256签名的无状态登录令牌，格式为 base64url(payload).base64url(signature)
+ * payload中包含用户id、昵称、头像、令牌id和过期时间，校验只需要CPU计算，不访问Redis
+ */
+@Slf4j
+@Component
+public class SignedTokenCodec {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    /**
+     * 校验通过的令牌内容
+     */
+    @Data
+    public static class Claims {
+        private final UserDTO user;
+        /**
+         * 令牌id，用于吊销
+         */
+        private final String jti;
+        /**
+         * 过期时间，毫秒时间戳
+         */
+        private final long expireAt;
+    }
+
+    private final SecretKey key;
+    private final long ttlMillis;
+
+    /**
+     * Mac不是线程安全的，每个线程复用一个实例
+     */
+    private final ThreadLocal<Mac> macs;
+
+    public SignedTokenCodec(@Value("${hmdp.login.token-secret:}") String secret,
+                            @Value("${hmdp.login.signed-token-ttl:2h}") Duration ttl) {
+        if (StrUtil.isBlank(secret)) {
+            // 未配置密钥时由KeyGenerator基于SecureRandom生成，重启后令牌全部失效，多实例部署必须配置相同的密钥
+            this.key = generateKey();
+            log.warn("未配置 hmdp.login.token-secret，使用随机密钥");
+        } else {
+            this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        }
+        this.ttlMillis = ttl.toMillis();
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * 签发令牌
+     * @param user 登录用户
+     * @return 令牌
+     */
+    public String issue(UserDTO user) {
+        JSONObject payload = new JSONObject();
+        payload.set("id", user.getId());
+        payload.set("n", user.getNickName());
+        payload.set("i", user.getIcon());
+        payload.set("j", UUID.fastUUID().toString(true));
+        payload.set("e", System.currentTimeMillis() + ttlMillis);
+        String body = ENCODER.encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8));
+        return body + "." + ENCODER.encodeToString(sign(body));
+    }
+
+    /**
+     * 是否是签名令牌，Redis会话的令牌是不含'.'的UUID
+     */
+    public boolean isSigned(String token) {
+        return token.indexOf('.') > 0;
+    }
+
+    /**
+     * 校验签名和过期时间
+     * @param token 令牌
+     * @return 令牌内容，签名错误、格式错误或已过期返回null
+     */
+    public Claims verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        String body = token.substring(0, dot);
+        try {
+            // 1.校验签名，使用固定时间的比较避免时序攻击
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(sign(body), signature)) {
+                return null;
+            }
+            // 2.校验过期时间
+            JSONObject payload = JSONUtil.parseObj(new String(DECODER.decode(body), StandardCharsets.UTF_8));
+            long expireAt = payload.getLong("e");
+            if (expireAt < System.currentTimeMillis()) {
+                return null;
+            }
+            UserDTO user = new UserDTO();
+            user.setId(payload.getLong("id"));
+            user.setNickName(payload.getStr("n"));
+            user.setIcon(payload.getStr("i"));
+            return new Claims(user, payload.getStr("j"), expireAt);
+        } catch (IllegalArgumentException e) {
+            // base64或json格式错误
+            return null;
+        }
+    }
+
+    private static SecretKey generateKey() {
+        try {
+            return KeyGenerator.getInstance(ALGORITHM).generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] sign(String body) {
+        return macs.get().doFinal(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
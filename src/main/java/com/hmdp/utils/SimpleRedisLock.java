@@ -1,9 +1,7 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.lang.UUID;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 
 import java.util.Collections;
 import java.util.concurrent.TimeUnit;
@@ -21,15 +19,21 @@ public class SimpleRedisLock implements ILock {
      * Redis操作模板
      */
     private StringRedisTemplate stringRedisTemplate;
+    /**
+     * lua脚本注册中心，解锁脚本unlock.lua通过它以EVALSHA执行
+     */
+    private RedisScriptRegistry redisScriptRegistry;
 
     /**
      * 构造函数
      * @param name 锁名称
      * @param stringRedisTemplate Redis操作模板
+     * @param redisScriptRegistry lua脚本注册中心
      */
-    public SimpleRedisLock(String name, StringRedisTemplate stringRedisTemplate) {
+    public SimpleRedisLock(String name, StringRedisTemplate stringRedisTemplate, RedisScriptRegistry redisScriptRegistry) {
         this.name = name;
         this.stringRedisTemplate = stringRedisTemplate;
+        this.redisScriptRegistry = redisScriptRegistry;
     }
 
     /**
@@ -40,18 +44,6 @@ public class SimpleRedisLock implements ILock {
      * 线程标识前缀，使用UUID确保不同JVM实例的唯一性
      */
     private static final String ID_PREFIX = UUID.randomUUID().toString(true) + "-";
-    /**
-     * 解锁的Lua脚本对象
-     */
-    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
-    static {
-        UNLOCK_SCRIPT = new DefaultRedisScript<>();
-        // 设置Lua脚本的位置
-        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
-        // 设置脚本返回值类型
-        UNLOCK_SCRIPT.setResultType(Long.class);
-    }
-
     @Override
     public boolean tryLock(long timeoutSec) {
         // 获取线程标示，确保锁的唯一性
@@ -66,8 +58,7 @@ public class SimpleRedisLock implements ILock {
     @Override
     public void unlock() {
         // 调用lua脚本，确保释放锁的原子性和安全性
-        stringRedisTemplate.execute(
-                UNLOCK_SCRIPT,
+        redisScriptRegistry.execute("unlock",
                 Collections.singletonList(KEY_PREFIX + name),  // KEYS参数列表
                 ID_PREFIX + Thread.currentThread().getId());   // ARGV参数列表
     }
@@ -0,0 +1,86 @@
+package com.hmdp.utils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Smile二进制编码，字段名和数值都按二进制写入，体积更小，解码时直接绑定到目标类型
+ * 带过期时间的数据使用定长头部：1字节版本 + 8字节过期时间(毫秒) + 8字节重建耗时(毫秒)，之后是data的Smile编码，
+ * 读取过期时间不需要解析数据
+ */
+@Component
+public class SmileCacheCodec implements CacheCodec {
+
+    private static final byte ENVELOPE_VERSION = 1;
+
+    private static final int ENVELOPE_HEADER_LENGTH = 1 + Long.BYTES + Long.BYTES;
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new SmileFactory())
+            .registerModule(new JavaTimeModule())
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    @Override
+    public String name() {
+        return "smile";
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalStateException("Smile编码失败", e);
+        }
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        return decode(bytes, 0, bytes.length, type);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(RedisData redisData) {
+        byte[] data = encode(redisData.getData());
+        long expireMillis = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long delta = redisData.getDelta() == null ? 0 : redisData.getDelta();
+        return ByteBuffer.allocate(ENVELOPE_HEADER_LENGTH + data.length)
+                .put(ENVELOPE_VERSION)
+                .putLong(expireMillis)
+                .putLong(delta)
+                .put(data)
+                .array();
+    }
+
+    @Override
+    public <R> RedisData decodeWithExpire(byte[] bytes, Class<R> type) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte version = buffer.get();
+        if (version != ENVELOPE_VERSION) {
+            throw new IllegalStateException("不支持的缓存数据版本: " + version);
+        }
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(buffer.getLong()), ZoneId.systemDefault()));
+        redisData.setDelta(buffer.getLong());
+        redisData.setData(decode(bytes, ENVELOPE_HEADER_LENGTH, bytes.length - ENVELOPE_HEADER_LENGTH, type));
+        return redisData;
+    }
+
+    private <R> R decode(byte[] bytes, int offset, int length, Class<R> type) {
+        try {
+            return objectMapper.readValue(bytes, offset, length, type);
+        } catch (IOException e) {
+            throw new IllegalStateException("Smile解码失败", e);
+        }
+    }
+}
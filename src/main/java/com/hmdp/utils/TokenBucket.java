@@ -0,0 +1,40 @@
+package com.hmdp.utils;
+
+/**
+ * 本地令牌桶，与rate_limit.lua的算法一致：按经过的时间补充令牌，有令牌时取走一个
+ * 各实例的时钟可能不一致，时间回退时不补充令牌
+ */
+public class TokenBucket {
+
+    private double tokens;
+    private long ts;
+
+    /**
+     * 创建一个满的令牌桶
+     * @param capacity 令牌桶容量
+     * @param now 当前时间(毫秒)
+     */
+    public TokenBucket(int capacity, long now) {
+        this.tokens = capacity;
+        this.ts = now;
+    }
+
+    /**
+     * 尝试取走一个令牌
+     * @param capacity 令牌桶容量
+     * @param periodMillis 补满令牌桶的时间
+     * @param now 当前时间(毫秒)
+     * @return 是否取到令牌
+     */
+    public synchronized boolean tryAcquire(int capacity, long periodMillis, long now) {
+        if (now > ts) {
+            tokens = Math.min(capacity, tokens + (double) (now - ts) * capacity / periodMillis);
+            ts = now;
+        }
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,54 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_KEY;
+
+/**
+ * 已吊销的签名令牌，保存在zset login:revoked 中，member为令牌id，score为令牌的过期时间
+ * 令牌过期后吊销记录随之清理，集合大小只与有效期内退出登录的次数有关
+ * 只有敏感接口才检查吊销，读接口只校验签名，不访问Redis
+ */
+@Component
+public class TokenRevocationList {
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.login.revocation-check-paths:}")
+    private List<String> checkPaths;
+
+    /**
+     * 吊销令牌
+     * @param claims 令牌内容
+     */
+    public void revoke(SignedTokenCodec.Claims claims) {
+        stringRedisTemplate.opsForZSet().add(LOGIN_REVOKED_KEY, claims.getJti(), claims.getExpireAt());
+        // 顺便清理已过期的吊销记录 ZREMRANGEBYSCORE login:revoked 0 now
+        stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_REVOKED_KEY, 0, System.currentTimeMillis());
+    }
+
+    /**
+     * 请求路径是否需要检查吊销
+     */
+    public boolean requiresCheck(String path) {
+        for (String pattern : checkPaths) {
+            if (pathMatcher.match(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isRevoked(String jti) {
+        return stringRedisTemplate.opsForZSet().score(LOGIN_REVOKED_KEY, jti) != null;
+    }
+}
@@ -0,0 +1,179 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_TOKEN_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * 登录会话的本地缓存：token -> UserDTO，命中时不再查询Redis
+ * token的有效期不再每次请求都刷新，剩余有效期低于 LOGIN_USER_TTL - refresh-interval 时才加入续期队列，
+ * 由后台线程定期通过管道批量执行EXPIRE
+ */
+@Slf4j
+@Component
+public class TokenSessionCache implements MessageListener {
+
+    /**
+     * 本地缓存的会话，expireAt为估算的Redis中token的过期时间
+     */
+    private static class Session {
+        private final UserDTO user;
+        private volatile long expireAt;
+
+        private Session(UserDTO user) {
+            this.user = user;
+        }
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Cache<String, Session> sessions;
+    private final long refreshIntervalMillis;
+
+    /**
+     * 等待续期的token
+     */
+    private final Set<String> pendingRefresh = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService refresher =
+            Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("token-refresher-", true));
+
+    public TokenSessionCache(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container,
+                             @Value("${hmdp.session.local.maximum-size:10000}") long maximumSize,
+                             @Value("${hmdp.session.local.ttl:30s}") Duration ttl,
+                             @Value("${hmdp.session.refresh-interval:10m}") Duration refreshInterval,
+                             @Value("${hmdp.session.refresh-flush-interval:1s}") Duration flushInterval) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.refreshIntervalMillis = refreshInterval.toMillis();
+        long flushMillis = flushInterval.toMillis();
+        refresher.scheduleWithFixedDelay(this::flushRefresh, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        // 订阅会话失效消息，其它节点退出登录时清理本地会话
+        container.addMessageListener(this, new ChannelTopic(LOGIN_TOKEN_INVALIDATE_CHANNEL));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        refresher.shutdown();
+        flushRefresh();
+    }
+
+    /**
+     * 根据token查询登录用户，本地未命中时查询Redis
+     * @param token 登录凭证
+     * @return 登录用户，token无效返回null
+     */
+    public UserDTO get(String token) {
+        // 1.查询本地缓存
+        Session session = sessions.getIfPresent(token);
+        if (session == null) {
+            // 2.未命中，一次管道查询Redis中的用户和剩余有效期 HGETALL login:token:{token}、PTTL login:token:{token}
+            session = load(token);
+            if (session == null) {
+                return null;
+            }
+            sessions.put(token, session);
+        }
+        // 3.剩余有效期低于阈值时才续期
+        long now = System.currentTimeMillis();
+        if (session.expireAt - now < TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL) - refreshIntervalMillis) {
+            session.expireAt = now + TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL);
+            pendingRefresh.add(token);
+        }
+        return session.user;
+    }
+
+    /**
+     * 删除会话，同时清理本节点的本地缓存并广播给其它节点
+     * @param token 登录凭证
+     */
+    public void invalidate(String token) {
+        stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        sessions.invalidate(token);
+        pendingRefresh.remove(token);
+        stringRedisTemplate.convertAndSend(LOGIN_TOKEN_INVALIDATE_CHANNEL, token);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String token = new String(message.getBody(), StandardCharsets.UTF_8);
+        sessions.invalidate(token);
+        pendingRefresh.remove(token);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Session load(String token) {
+        byte[] key = (LOGIN_USER_KEY + token).getBytes(StandardCharsets.UTF_8);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hGetAll(key);
+            connection.pTtl(key);
+            return null;
+        });
+        Map<String, String> userMap = (Map<String, String>) results.get(0);
+        if (userMap == null || userMap.isEmpty()) {
+            return null;
+        }
+        Session session = new Session(BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false));
+        Long ttl = (Long) results.get(1);
+        session.expireAt = System.currentTimeMillis() + (ttl == null ? 0 : ttl);
+        return session;
+    }
+
+    /**
+     * 通过管道批量续期 EXPIRE login:token:{token} LOGIN_USER_TTL
+     */
+    private void flushRefresh() {
+        if (pendingRefresh.isEmpty()) {
+            return;
+        }
+        List<String> tokens = new ArrayList<>(pendingRefresh);
+        pendingRefresh.removeAll(tokens);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                long seconds = TimeUnit.MINUTES.toSeconds(LOGIN_USER_TTL);
+                for (String token : tokens) {
+                    connection.expire((LOGIN_USER_KEY + token).getBytes(StandardCharsets.UTF_8), seconds);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            // 续期失败，下次访问时重新续期
+            log.warn("批量续期token失败, 数量: {}", tokens.size(), e);
+            tokens.forEach(token -> {
+                Session session = sessions.getIfPresent(token);
+                if (session != null) {
+                    session.expireAt = 0;
+                }
+            });
+        }
+    }
+}
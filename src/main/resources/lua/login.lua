@@ -0,0 +1,9 @@
+-- 校验并删除验证码，比较和删除在一次往返中原子完成，验证码只能使用一次
+-- KEYS[1] 验证码key login:code:{phone}
+-- ARGV[1] 用户提交的验证码
+if (redis.call('get', KEYS[1]) ~= ARGV[1]) then
+    -- 验证码错误或已过期
+    return 0
+end
+redis.call('del', KEYS[1])
+return 1
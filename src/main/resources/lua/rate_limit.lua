@@ -0,0 +1,34 @@
+-- 令牌桶限流，按时间差补充令牌，有令牌时取走一个
+-- KEYS[1] 令牌桶key rate:limit:{name}:{type}:{value}
+-- ARGV[1] 令牌桶容量，ARGV[2] 补满令牌桶的时间(毫秒)，ARGV[3] 当前时间(毫秒)
+local capacity = tonumber(ARGV[1])
+local period = tonumber(ARGV[2])
+local now = tonumber(ARGV[3])
+
+-- 1.查询剩余令牌和上次补充的时间 hmget key tokens ts
+local bucket = redis.call('hmget', KEYS[1], 'tokens', 'ts')
+local tokens = tonumber(bucket[1])
+local ts = tonumber(bucket[2])
+if (tokens == nil) then
+    -- 不存在，令牌桶是满的
+    tokens = capacity
+    ts = now
+end
+
+-- 2.按经过的时间补充令牌，各实例的时钟可能不一致，时间不回退
+if (now > ts) then
+    tokens = math.min(capacity, tokens + (now - ts) * capacity / period)
+    ts = now
+end
+
+-- 3.取走一个令牌
+local allowed = 0
+if (tokens >= 1) then
+    tokens = tokens - 1
+    allowed = 1
+end
+
+-- 4.保存令牌桶，经过period后令牌桶已补满，可以直接过期
+redis.call('hset', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(ts))
+redis.call('pexpire', KEYS[1], period)
+return allowed
@@ -5,14 +5,28 @@ local voucherId = ARGV[1]
 local userId = ARGV[2]
 -- 1.3.订单id
 local orderId = ARGV[3]
+-- 1.4.当前时间(毫秒)
+local now = tonumber(ARGV[4])
 
 -- 2.数据key
 -- 2.1.库存key
 local stockKey = 'seckill:stock:' .. voucherId
 -- 2.2.订单key
 local orderKey = 'seckill:order:' .. voucherId
+-- 2.3.秒杀时间key
+local windowKey = 'seckill:window:' .. voucherId
 
 -- 3.脚本业务
+-- 3.0.判断是否在秒杀时间内 hmget windowKey begin end
+local window = redis.call('hmget', windowKey, 'begin', 'end')
+if(window[1] and now < tonumber(window[1])) then
+    -- 尚未开始，返回3
+    return 3
+end
+if(window[2] and now > tonumber(window[2])) then
+    -- 已经结束，返回4
+    return 4
+end
 -- 3.1.判断库存是否充足 get stockKey
 if(tonumber(redis.call('get', stockKey)) <= 0) then
     -- 3.2.库存不足，返回1
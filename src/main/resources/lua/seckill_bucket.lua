@@ -0,0 +1,45 @@
+-- 分桶模式下的秒杀脚本，只访问用户所在桶的key，同一个桶的key使用相同的hash tag
+-- 订单消息由调用方在脚本成功后写入stream.orders，脚本不访问KEYS以外的key，保证集群模式下可以执行
+-- 1.参数列表
+-- 1.1.用户所在桶的库存key
+local stockKey = KEYS[1]
+-- 1.2.用户所在桶的下单用户key
+local orderKey = KEYS[2]
+-- 1.3.用户所在桶的秒杀时间key
+local windowKey = KEYS[3]
+-- 1.4.优惠券id
+local voucherId = ARGV[1]
+-- 1.5.用户id
+local userId = ARGV[2]
+-- 1.6.订单id
+local orderId = ARGV[3]
+-- 1.7.当前时间(毫秒)
+local now = tonumber(ARGV[4])
+
+-- 2.脚本业务
+-- 2.0.判断是否在秒杀时间内 hmget windowKey begin end
+local window = redis.call('hmget', windowKey, 'begin', 'end')
+if(window[1] and now < tonumber(window[1])) then
+    -- 尚未开始，返回3
+    return 3
+end
+if(window[2] and now > tonumber(window[2])) then
+    -- 已经结束，返回4
+    return 4
+end
+-- 2.1.判断用户是否下单 SISMEMBER orderKey userId
+if(redis.call('sismember', orderKey, userId) == 1) then
+    -- 存在，说明是重复下单，返回2
+    return 2
+end
+-- 2.2.判断本桶库存是否充足 get stockKey
+if(tonumber(redis.call('get', stockKey) or '0') > 0) then
+    -- 扣库存 incrby stockKey -1
+    redis.call('incrby', stockKey, -1)
+    -- 下单（保存用户）sadd orderKey userId
+    redis.call('sadd', orderKey, userId)
+    return 0
+end
+-- 2.3.本桶库存不足，先占用一人一单资格，返回-1，由调用方向相邻桶借库存
+redis.call('sadd', orderKey, userId)
+return -1
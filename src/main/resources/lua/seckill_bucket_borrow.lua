@@ -0,0 +1,20 @@
+-- 分桶模式下向相邻桶借库存，调用前用户已在自己所在的桶占用了一人一单资格
+-- 订单消息由调用方在脚本成功后写入stream.orders
+-- 1.参数列表
+-- 1.1.相邻桶的库存key
+local stockKey = KEYS[1]
+-- 1.2.优惠券id
+local voucherId = ARGV[1]
+-- 1.3.用户id
+local userId = ARGV[2]
+-- 1.4.订单id
+local orderId = ARGV[3]
+
+-- 2.判断库存是否充足 get stockKey
+if(tonumber(redis.call('get', stockKey) or '0') <= 0) then
+    -- 库存不足，返回1
+    return 1
+end
+-- 3.扣库存 incrby stockKey -1
+redis.call('incrby', stockKey, -1)
+return 0
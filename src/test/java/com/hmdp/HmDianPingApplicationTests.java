@@ -4,6 +4,7 @@ import com.hmdp.entity.Shop;
 import com.hmdp.service.impl.ShopServiceImpl;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisIdWorker;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.geo.Point;
@@ -18,9 +19,11 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
 import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
 
 @SpringBootTest
@@ -66,6 +69,31 @@ class HmDianPingApplicationTests {
         cacheClient.setWithLogicalExpire(CACHE_SHOP_KEY + 1L, shop, 10L, TimeUnit.SECONDS);
     }
 
+    @Test
+    void testQueryWithMutexStampede() throws InterruptedException {
+        // 缓存失效后500个并发请求同一个商铺，只应查询一次数据库
+        cacheClient.delete(CACHE_SHOP_KEY + 1L);
+        AtomicInteger dbQueries = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(500);
+
+        Runnable task = () -> {
+            try {
+                cacheClient.queryWithMutex(CACHE_SHOP_KEY, 1L, Shop.class, id -> {
+                    dbQueries.incrementAndGet();
+                    return shopService.getById(id);
+                }, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            } finally {
+                latch.countDown();
+            }
+        };
+        for (int i = 0; i < 500; i++) {
+            es.submit(task);
+        }
+        latch.await();
+        System.out.println("dbQueries = " + dbQueries.get());
+        Assertions.assertEquals(1, dbQueries.get());
+    }
+
     @Test
     void loadShopData() {
         // 1.查询店铺信息
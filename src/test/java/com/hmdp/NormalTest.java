@@ -1,7 +1,11 @@
 package com.hmdp;
 
+import com.hmdp.utils.CountMinSketch;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 public class NormalTest {
 
     @Test
@@ -40,4 +44,21 @@ public class NormalTest {
         System.out.println("time2 = " + (t4 - t3));
         System.out.println("count2 = " + count2);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCountMinSketch() {
+        CountMinSketch sketch = new CountMinSketch(4, 2048);
+        for (int i = 0; i < 10000; i++) {
+            sketch.add("cache:shop:" + (i % 1000), 1);
+        }
+        sketch.add("cache:shop:hot", 5000);
+        // 只会高估不会低估，误差上限约为 总次数 * e / width
+        long errorBound = (long) (15000 * Math.E / 2048);
+        long estimate = sketch.estimate("cache:shop:hot");
+        assertTrue(estimate >= 5000 && estimate <= 5000 + errorBound);
+        assertTrue(sketch.estimate("cache:shop:1") >= 10);
+
+        sketch.clear();
+        assertEquals(0, sketch.estimate("cache:shop:hot"));
+    }
+}
@@ -0,0 +1,96 @@
+package com.hmdp;
+
+import com.hmdp.utils.RateLimiter;
+import com.hmdp.utils.RedisScriptRegistry;
+import com.hmdp.utils.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RateLimiterTest {
+
+    @Test
+    void testTokenBucketRefill() {
+        // 容量5，1秒补满，即每200毫秒补充一个令牌
+        TokenBucket bucket = new TokenBucket(5, 0);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(5, 1000, 0));
+        }
+        assertFalse(bucket.tryAcquire(5, 1000, 0));
+        assertFalse(bucket.tryAcquire(5, 1000, 199));
+        assertTrue(bucket.tryAcquire(5, 1000, 200));
+        assertFalse(bucket.tryAcquire(5, 1000, 200));
+        // 闲置很久后最多补满到容量
+        int passed = 0;
+        while (bucket.tryAcquire(5, 1000, 60_000)) {
+            passed++;
+        }
+        assertEquals(5, passed);
+    }
+
+    @Test
+    void testTokenBucketClockGoesBack() {
+        TokenBucket bucket = new TokenBucket(1, 1000);
+        assertTrue(bucket.tryAcquire(1, 1000, 1000));
+        // 时间回退不补充令牌，也不影响之后的补充
+        assertFalse(bucket.tryAcquire(1, 1000, 0));
+        assertFalse(bucket.tryAcquire(1, 1000, 1999));
+        assertTrue(bucket.tryAcquire(1, 1000, 2000));
+    }
+
+    @Test
+    void testLocalRejectSkipsRedis() {
+        RedisScriptRegistry registry = mock(RedisScriptRegistry.class);
+        when(registry.execute(eq("rate_limit"), anyList(), any(), any(), any())).thenReturn(1L);
+        RateLimiter rateLimiter = new RateLimiter(registry, 1000, Duration.ofMinutes(10));
+
+        assertTrue(rateLimiter.tryAcquire("login", "PHONE:13800000000", 1, 60_000));
+        // 本地令牌桶已空，直接拒绝，不访问Redis
+        assertFalse(rateLimiter.tryAcquire("login", "PHONE:13800000000", 1, 60_000));
+        verify(registry, times(1)).execute(eq("rate_limit"), anyList(), any(), any(), any());
+        // 不同的令牌桶互不影响
+        assertTrue(rateLimiter.tryAcquire("login", "PHONE:13800000001", 1, 60_000));
+
+        Map<String, Long> stats = rateLimiter.stats().get("login");
+        assertEquals(2L, stats.get("passed"));
+        assertEquals(1L, stats.get("localRejected"));
+        assertEquals(0L, stats.get("redisRejected"));
+    }
+
+    @Test
+    void testRedisReject() {
+        RedisScriptRegistry registry = mock(RedisScriptRegistry.class);
+        // 其它节点已经取走了全局令牌
+        when(registry.execute(eq("rate_limit"), anyList(), any(), any(), any())).thenReturn(0L);
+        RateLimiter rateLimiter = new RateLimiter(registry, 1000, Duration.ofMinutes(10));
+
+        assertFalse(rateLimiter.tryAcquire("seckill", "USER:1010", 10, 1000));
+        assertEquals(1L, rateLimiter.stats().get("seckill").get("redisRejected"));
+    }
+
+    @Test
+    void testRedisFailureFallsBackToLocal() {
+        RedisScriptRegistry registry = mock(RedisScriptRegistry.class);
+        when(registry.execute(eq("rate_limit"), anyList(), any(), any(), any()))
+                .thenThrow(new IllegalStateException("Redis不可用"));
+        RateLimiter rateLimiter = new RateLimiter(registry, 1000, Duration.ofMinutes(10));
+
+        // Redis不可用时只按本地令牌桶限流
+        assertTrue(rateLimiter.tryAcquire("seckill", "USER:1010", 2, 60_000));
+        assertTrue(rateLimiter.tryAcquire("seckill", "USER:1010", 2, 60_000));
+        assertFalse(rateLimiter.tryAcquire("seckill", "USER:1010", 2, 60_000));
+        verify(registry, times(2)).execute(eq("rate_limit"), anyList(), any(), any(), any());
+    }
+}
@@ -0,0 +1,72 @@
+package com.hmdp;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.SignedTokenCodec;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SignedTokenCodecTest {
+
+    private final SignedTokenCodec codec = new SignedTokenCodec("test-secret", Duration.ofHours(2));
+
+    @Test
+    void testRoundTrip() {
+        String token = codec.issue(user());
+        assertTrue(codec.isSigned(token));
+        SignedTokenCodec.Claims claims = codec.verify(token);
+        assertNotNull(claims);
+        assertEquals(1L, claims.getUser().getId());
+        assertEquals("小鱼同学", claims.getUser().getNickName());
+        assertEquals("/imgs/icons/user1.jpg", claims.getUser().getIcon());
+        assertNotNull(claims.getJti());
+        // 每次签发的令牌id不同
+        assertFalse(claims.getJti().equals(codec.verify(codec.issue(user())).getJti()));
+    }
+
+    @Test
+    void testTamperedSignature() {
+        String token = codec.issue(user());
+        int dot = token.indexOf('.');
+        // 修改签名的第一个字符
+        char c = token.charAt(dot + 1) == 'A' ? 'B' : 'A';
+        assertNull(codec.verify(token.substring(0, dot + 1) + c + token.substring(dot + 2)));
+        // 修改payload，签名不再匹配
+        String other = codec.issue(user());
+        assertNull(codec.verify(other.substring(0, other.indexOf('.')) + token.substring(dot)));
+        // 其它密钥签发的令牌
+        assertNull(codec.verify(new SignedTokenCodec("other-secret", Duration.ofHours(2)).issue(user())));
+        // 未配置密钥时使用随机密钥，与固定密钥互不通过
+        assertNull(codec.verify(new SignedTokenCodec("", Duration.ofHours(2)).issue(user())));
+    }
+
+    @Test
+    void testExpired() {
+        SignedTokenCodec expired = new SignedTokenCodec("test-secret", Duration.ofSeconds(-1));
+        assertNull(expired.verify(expired.issue(user())));
+    }
+
+    @Test
+    void testMalformed() {
+        assertFalse(codec.isSigned("5d2a0fa4c8b14e5b9c7f8f0e1a2b3c4d"));
+        assertNull(codec.verify("5d2a0fa4c8b14e5b9c7f8f0e1a2b3c4d"));
+        assertNull(codec.verify(".abc"));
+        assertNull(codec.verify("abc."));
+        assertNull(codec.verify("abc.!!!"));
+        assertNull(codec.verify("abc.def.ghi"));
+    }
+
+    private static UserDTO user() {
+        UserDTO user = new UserDTO();
+        user.setId(1L);
+        user.setNickName("小鱼同学");
+        user.setIcon("/imgs/icons/user1.jpg");
+        return user;
+    }
+}